@@ -0,0 +1,358 @@
+package arcade.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import arcade.level.LevelSimulation;
+import arcade.level.LevelStage;
+import sprite.DemoProtagonist;
+import sprite.SmallSquarePlatformSprite;
+import visual.dynamic.described.Sprite;
+
+/**
+ * JMH micro-benchmarks for the level package. Each benchmark is run for every level size, first to
+ * warm up and then for a fixed measurement period, and reports its throughput; the GC profiler adds
+ * the number of bytes allocated per operation (gc.alloc.rate.norm). Every benchmark returns its
+ * result so that JMH consumes it and the measured work cannot be optimized away.
+ *
+ * Usage: java arcade.bench.LevelBenchmark [size ...], or mvn test-compile exec:exec
+ *
+ * @author John Latino
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+public class LevelBenchmark
+{
+  private static final int SPACING = 150;
+  private static final int TIME_STEP = 20;
+  private static final int BOTTOM = 700;
+  private static final int ANTAGONIST_SPACING = 20;
+
+  /**
+   * Runs every benchmark for every size given on the command line.
+   *
+   * @param args
+   *          level sizes (defaults to 100 through 100000)
+   * @throws RunnerException
+   *           if JMH fails to run the benchmarks
+   */
+  public static void main(String[] args) throws RunnerException
+  {
+    ChainedOptionsBuilder options = new OptionsBuilder()
+        .include(LevelBenchmark.class.getName() + "\\.")
+        .addProfiler(GCProfiler.class);
+    if (args.length > 0)
+    {
+      options.param("size", args);
+    }
+    new Runner(options.build()).run();
+  }
+
+  /**
+   * Creates a level of the given size with platforms at random heights.
+   *
+   * @param size
+   *          number of platforms
+   * @return the level
+   */
+  static arcade.level.Level createLevel(int size)
+  {
+    Random random = new Random(size);
+    arcade.level.Level level = new arcade.level.Level();
+    for (int i = 0; i < size; i++)
+    {
+      level.add(new SmallSquarePlatformSprite(200 + random.nextInt(400), i * SPACING));
+    }
+    return level;
+  }
+
+  /**
+   * Creates a protagonist standing at the left of the screen.
+   *
+   * @return the protagonist
+   */
+  static DemoProtagonist createProtagonist()
+  {
+    DemoProtagonist protagonist = new DemoProtagonist(BOTTOM);
+    protagonist.setXInitial(100);
+    protagonist.setYInitial(BOTTOM - 80);
+    return protagonist;
+  }
+
+  /**
+   * Builds a Level from scratch.
+   *
+   * @param state
+   *          the level size
+   * @return the level
+   */
+  @Benchmark
+  public arcade.level.Level levelBuild(Size state)
+  {
+    return createLevel(state.size);
+  }
+
+  /**
+   * Queries the end time of a Level.
+   *
+   * @param state
+   *          the level
+   * @return the end time
+   */
+  @Benchmark
+  public int levelEndTime(LevelState state)
+  {
+    state.offset ^= 1;
+    return state.level.getLevelEndTime(state.offset);
+  }
+
+  /**
+   * Copies the initial sprites of a Level.
+   *
+   * @param state
+   *          the level
+   * @return the copied sprites
+   */
+  @Benchmark
+  public List<Sprite> initialSprites(LevelState state)
+  {
+    return state.level.getInitialSprites();
+  }
+
+  /**
+   * Takes copies of the initial sprites of a Level from its pool and hands them back.
+   *
+   * @param state
+   *          the level
+   * @return the copied sprites
+   */
+  @Benchmark
+  public List<Sprite> pooledInitialSprites(LevelState state)
+  {
+    state.pooled.clear();
+    state.level.acquireInitialSprites(state.pooled);
+    state.level.releaseSprites(state.pooled);
+    return state.pooled;
+  }
+
+  /**
+   * Restarts a LevelStage.
+   *
+   * @param state
+   *          the stage
+   * @return the restarted stage
+   */
+  @Benchmark
+  public LevelStage stageRestart(StageState state)
+  {
+    state.stage.restart();
+    state.stage.getStage().stop();
+    return state.stage;
+  }
+
+  /**
+   * Advances the keyframes of copies of every sprite in a Level by one tick. The time wraps at the
+   * level end time, so the measurement covers the whole level rather than only sprites that have
+   * reached their end state.
+   *
+   * @param state
+   *          the level
+   * @return the last sprite ticked
+   */
+  @Benchmark
+  public Sprite terrainTick(LevelState state)
+  {
+    state.time = (state.time + TIME_STEP) % state.endTime;
+    Sprite last = null;
+    for (Sprite s : state.copies)
+    {
+      s.handleTick(state.time);
+      last = s;
+    }
+    return last;
+  }
+
+  /**
+   * Tests the protagonist against its antagonists. The terrain does not move, so the broad phase
+   * is built in setup and only the query and the exact tests are measured.
+   *
+   * @param state
+   *          the protagonist and its antagonists
+   * @return the sprite the protagonist collides with, or null
+   */
+  @Benchmark
+  public Sprite collision(CollisionState state)
+  {
+    return state.protagonist.getCollision();
+  }
+
+  /**
+   * Plays a headless simulation of a level by one tick: spawning, moving and culling the terrain,
+   * stepping the protagonist and testing it for collisions.
+   *
+   * @param state
+   *          the simulation
+   * @return true if the protagonist did not collide with any terrain
+   */
+  @Benchmark
+  public boolean simulationStep(SimulationState state)
+  {
+    LevelSimulation simulation = state.simulation;
+    if (simulation.getTime() >= simulation.getEndTime())
+    {
+      simulation.reset();
+    }
+    return simulation.step(false);
+  }
+
+  /**
+   * Number of obstacles in the benchmarked level.
+   */
+  @State(Scope.Thread)
+  public static class Size
+  {
+    @Param({ "100", "1000", "10000", "100000" })
+    public int size;
+  }
+
+  /**
+   * A level of the benchmarked size, with copies of its sprites to tick.
+   */
+  @State(Scope.Thread)
+  public static class LevelState
+  {
+    arcade.level.Level level;
+    List<Sprite> copies;
+    List<Sprite> pooled;
+    int endTime;
+    int offset;
+    int time;
+
+    /**
+     * Builds the level and copies its sprites.
+     *
+     * @param size
+     *          the level size
+     */
+    @Setup(Level.Trial)
+    public void setUp(Size size)
+    {
+      level = createLevel(size.size);
+      copies = level.getInitialSprites();
+      pooled = new ArrayList<Sprite>(size.size);
+      endTime = level.getLevelEndTime();
+      offset = 0;
+      time = 0;
+    }
+  }
+
+  /**
+   * A protagonist with as many antagonists as the benchmarked size, spread along the x axis at
+   * random heights, so that a few of them are near the protagonist.
+   */
+  @State(Scope.Thread)
+  public static class CollisionState
+  {
+    DemoProtagonist protagonist;
+
+    /**
+     * Places the antagonists and builds the broad phase.
+     *
+     * @param size
+     *          the number of antagonists
+     */
+    @Setup(Level.Trial)
+    public void setUp(Size size)
+    {
+      Random random = new Random(size.size);
+      protagonist = createProtagonist();
+      protagonist.goToInitial();
+      for (int i = 0; i < size.size; i++)
+      {
+        SmallSquarePlatformSprite s = new SmallSquarePlatformSprite(0, 0);
+        s.setLocation(100 + (i - size.size / 2) * ANTAGONIST_SPACING, 200 + random.nextInt(500));
+        protagonist.addAntagonist(s);
+      }
+      protagonist.invalidateBroadPhase();
+      protagonist.getCollision();
+    }
+  }
+
+  /**
+   * A LevelStage playing a level of the benchmarked size.
+   */
+  @State(Scope.Thread)
+  public static class StageState
+  {
+    LevelStage stage;
+
+    /**
+     * Builds the stage.
+     *
+     * @param size
+     *          the level size
+     */
+    @Setup(Level.Trial)
+    public void setUp(Size size)
+    {
+      stage = new LevelStage(createLevel(size.size), createProtagonist(), 1000, BOTTOM,
+          TIME_STEP);
+    }
+
+    /**
+     * Stops the stage.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+      stage.getStage().stop();
+    }
+  }
+
+  /**
+   * A headless simulation of a level of the benchmarked size.
+   */
+  @State(Scope.Thread)
+  public static class SimulationState
+  {
+    LevelSimulation simulation;
+
+    /**
+     * Builds the simulation.
+     *
+     * @param size
+     *          the level size
+     */
+    @Setup(Level.Trial)
+    public void setUp(Size size)
+    {
+      simulation = new LevelSimulation(createLevel(size.size), createProtagonist(), TIME_STEP);
+      simulation.reset();
+    }
+  }
+}
@@ -1,9 +1,13 @@
 package arcade.elements;
 
+import java.awt.Graphics;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
 
 import visual.dynamic.described.RuleBasedSprite;
+import visual.dynamic.described.Sprite;
 import visual.statik.TransformableContent;
 
 /**
@@ -16,10 +20,34 @@ import visual.statik.TransformableContent;
  */
 public abstract class AbstractProtagonistSprite extends RuleBasedSprite implements KeyListener
 {
+  private static final int INPUT_CAPACITY = 64;
+
   protected double xInitial, yInitial;
 
   private int victoryTime;
 
+  private BroadPhase broadPhase;
+  private boolean broadPhaseStale;
+  private ArrayList<Sprite> candidates;
+  private long collisionChecks;
+  private RasterCache rasterCache;
+
+  private int physicsStep;
+  private int physicsTime, lastTickTime;
+  private int accumulator;
+  private boolean clockStarted;
+  private double previousX, previousY, previousAngle;
+  private double alpha;
+  private boolean interpolating;
+
+  private InputQueue inputs;
+  private InputQueue.Handler inputHandler;
+
+  private int stepCount;
+  private JumpListener jumpListener;
+  private int[] jumpSchedule;
+  private int nextScheduled;
+
   /**
    * Abstract class constructor. Passes the content to the parent sprite.
    * 
@@ -29,6 +57,140 @@ public abstract class AbstractProtagonistSprite extends RuleBasedSprite implemen
   public AbstractProtagonistSprite(TransformableContent content)
   {
     super(content);
+    broadPhase = new SweepAndPrune();
+    candidates = new ArrayList<Sprite>();
+
+    inputs = new InputQueue(INPUT_CAPACITY);
+    inputHandler = new InputQueue.Handler()
+    {
+      @Override
+      public void handleKeyPress(int keyCode, char keyChar, long timestamp)
+      {
+        // scripted jumps replace key input
+        if (jumpSchedule == null)
+        {
+          AbstractProtagonistSprite.this.handleKeyPress(keyCode, keyChar);
+        }
+      }
+    };
+  }
+
+  /**
+   * Adds an antagonist to the protagonist and to its broad-phase collision index.
+   * 
+   * @param antagonist
+   *          the antagonist to add
+   */
+  @Override
+  public void addAntagonist(Sprite antagonist)
+  {
+    super.addAntagonist(antagonist);
+    broadPhase.add(antagonist);
+  }
+
+  /**
+   * Returns true if a jump is currently a legal movement. Input handlers and simulations only call
+   * jump when this returns true. Protagonists can always jump by default.
+   * 
+   * @return true if the protagonist can jump
+   */
+  public boolean canJump()
+  {
+    return true;
+  }
+
+  /**
+   * Exact collision test applied to the candidates that survive the broad phase. Compares bounding
+   * boxes by default; override for a finer shape test.
+   * 
+   * @param antagonist
+   *          candidate antagonist
+   * @return true if the protagonist collides with the antagonist
+   */
+  protected boolean collidesWith(Sprite antagonist)
+  {
+    Rectangle2D bounds = getBounds2D();
+    return bounds != null && antagonist.getBounds2D().intersects(bounds);
+  }
+
+  /**
+   * Returns the broad-phase collision index used by this protagonist.
+   * 
+   * @return the broad phase
+   */
+  public BroadPhase getBroadPhase()
+  {
+    return broadPhase;
+  }
+
+  /**
+   * Returns the number of exact collision tests made since the protagonist was created.
+   * 
+   * @return number of collision pair checks
+   */
+  public long getCollisionChecks()
+  {
+    return collisionChecks;
+  }
+
+  /**
+   * Returns the first antagonist the protagonist currently collides with. Only antagonists whose
+   * bounds overlap the protagonist's column are passed to collidesWith. The broad phase is
+   * refreshed by the first query after the antagonists have moved, not by every query.
+   * 
+   * @return the colliding antagonist, or null if there is none
+   */
+  public Sprite getCollision()
+  {
+    Rectangle2D bounds = getBounds2D();
+    if (bounds == null)
+    {
+      return null;
+    }
+
+    if (broadPhaseStale)
+    {
+      broadPhase.update();
+      broadPhaseStale = false;
+    }
+    broadPhase.query(bounds.getMinX(), bounds.getMaxX(), candidates);
+
+    Sprite hit = null;
+    for (int i = 0; i < candidates.size() && hit == null; i++)
+    {
+      collisionChecks++;
+      if (collidesWith(candidates.get(i)))
+      {
+        hit = candidates.get(i);
+      }
+    }
+    candidates.clear();
+
+    return hit;
+  }
+
+  /**
+   * Returns content that looks like this sprite's content and is only used for painting: to fill
+   * raster caches and to draw the sprite between two physics states. It is transformed while
+   * painting, under its own lock, so it must not be the content of any sprite; sprites that look
+   * alike should return one shared instance, so that they share cached images.
+   * 
+   * @return the raster prototype, or null to paint the sprite as vector content even when a raster
+   *         cache is set, and at its latest physics state even when interpolating
+   */
+  protected TransformableContent getRasterPrototype()
+  {
+    return null;
+  }
+
+  /**
+   * Returns the raster cache used to paint this sprite.
+   * 
+   * @return the raster cache, or null if the sprite is painted as vector content
+   */
+  public RasterCache getRasterCache()
+  {
+    return rasterCache;
   }
 
   /**
@@ -42,20 +204,175 @@ public abstract class AbstractProtagonistSprite extends RuleBasedSprite implemen
   }
 
   /**
-   * Reset for when the level is restarted.
+   * Reset for when the level is restarted. The protagonist is restored in place, so all movement
+   * state must be returned to its initial values.
    */
   public abstract void goToInitial();
 
+  /**
+   * Returns the number of physics steps taken since the physics clock was last reset.
+   * 
+   * @return number of steps
+   */
+  public int getStepCount()
+  {
+    return stepCount;
+  }
+
+  /**
+   * Returns the queue that carries key presses from the event thread to the tick thread.
+   * 
+   * @return the input queue
+   */
+  public InputQueue getInputQueue()
+  {
+    return inputs;
+  }
+
+  /**
+   * Returns the fixed physics time step.
+   * 
+   * @return the physics time step, or 0 if the protagonist steps once per tick
+   */
+  public int getPhysicsStep()
+  {
+    return physicsStep;
+  }
+
+  /**
+   * Takes the next physics step, first requesting a jump if the schedule holds one for it.
+   */
+  private void nextStep(int time)
+  {
+    if (jumpSchedule != null)
+    {
+      while (nextScheduled < jumpSchedule.length && jumpSchedule[nextScheduled] <= stepCount)
+      {
+        nextScheduled++;
+      }
+      if (nextScheduled < jumpSchedule.length && jumpSchedule[nextScheduled] == stepCount + 1)
+      {
+        requestJump();
+      }
+    }
+
+    stepCount++;
+    step(time);
+  }
+
+  /**
+   * Returns the bounds covering the protagonist's previous and current physics states, which
+   * contain wherever an interpolated render can draw it. The previous state's bounds are taken from
+   * the raster prototype, so the protagonist itself is not moved.
+   * 
+   * @return the paint bounds, or null if the protagonist has no bounds
+   */
+  public Rectangle2D getPaintBounds()
+  {
+    Rectangle2D bounds = getBounds2D(true);
+    TransformableContent prototype = getRasterPrototype();
+    if (!interpolating || bounds == null || prototype == null)
+    {
+      return bounds;
+    }
+
+    Rectangle2D previous;
+    synchronized (prototype)
+    {
+      pose(prototype, previousX, previousY, previousAngle);
+      previous = prototype.getBounds2D(true);
+    }
+
+    if (previous != null)
+    {
+      bounds.add(previous);
+    }
+    return bounds;
+  }
+
+  /**
+   * Advances the protagonist to the given time. Key presses queued since the previous tick are
+   * handled first. Without a physics step, step is called once with
+   * the tick's time. With a physics step, the time elapsed since the previous tick is accumulated
+   * and step is called once per whole physics step, so the protagonist moves at the same speed
+   * whatever the tick rate; the remainder is used to interpolate between the last two physics
+   * states when rendering. A time earlier than the previous tick restarts the clock.
+   * 
+   * @param time
+   *          the current time
+   */
   @Override
-  public abstract void handleTick(int e);
+  public void handleTick(int time)
+  {
+    // the terrain has moved since the previous tick
+    broadPhaseStale = true;
+    inputs.drain(inputHandler);
+
+    if (physicsStep <= 0)
+    {
+      nextStep(time);
+      return;
+    }
+
+    if (!clockStarted || time < lastTickTime)
+    {
+      resetPhysicsClock(time);
+    }
+    accumulator += time - lastTickTime;
+    lastTickTime = time;
+
+    while (accumulator >= physicsStep)
+    {
+      previousX = x;
+      previousY = y;
+      previousAngle = angle;
+      interpolating = true;
+
+      physicsTime += physicsStep;
+      nextStep(physicsTime);
+      accumulator -= physicsStep;
+    }
+    alpha = (double) accumulator / physicsStep;
+  }
+
+  /**
+   * Marks the broad phase as out of date, so that the next collision query refreshes it. handleTick
+   * does this once per tick; code that moves the antagonists and calls step directly must call it
+   * after each move.
+   */
+  public void invalidateBroadPhase()
+  {
+    broadPhaseStale = true;
+  }
 
   /**
    * Performs actions associated with a jump event.
    */
   public abstract void jump();
 
+  /**
+   * Reacts to a key press. Called on the tick thread, before the tick's physics steps, for every
+   * key press queued since the previous tick.
+   * 
+   * @param keyCode
+   *          the key code of the event
+   * @param keyChar
+   *          the key character of the event
+   */
+  protected abstract void handleKeyPress(int keyCode, char keyChar);
+
+  /**
+   * Queues the key press, with its arrival time, to be handled on the next tick. Key presses are
+   * dropped if the input queue is full.
+   * 
+   * @param e
+   *          the key event
+   */
   @Override
-  public abstract void keyPressed(KeyEvent e);
+  public void keyPressed(KeyEvent e)
+  {
+    inputs.offer(e.getKeyCode(), e.getKeyChar(), System.nanoTime());
+  }
 
   @Override
   public void keyReleased(KeyEvent e)
@@ -76,6 +393,256 @@ public abstract class AbstractProtagonistSprite extends RuleBasedSprite implemen
    */
   public abstract AbstractProtagonistSprite regenerate();
 
+  /**
+   * Removes an antagonist from the protagonist and from its broad-phase collision index.
+   * 
+   * @param antagonist
+   *          the antagonist to remove
+   */
+  @Override
+  public void removeAntagonist(Sprite antagonist)
+  {
+    super.removeAntagonist(antagonist);
+    broadPhase.remove(antagonist);
+  }
+
+  /**
+   * Moves paint-only content to the given pose at the protagonist's scale.
+   */
+  private void pose(TransformableContent content, double poseX, double poseY, double poseAngle)
+  {
+    content.setLocation(poseX, poseY);
+    content.setRotation(poseAngle);
+    content.setScale(scaleX, scaleY);
+  }
+
+  /**
+   * Renders the sprite, as a single cached image if a raster cache and a raster prototype are set.
+   * With a physics step, the sprite is drawn between its last two physics states by posing the
+   * raster prototype; the protagonist's own location and rotation are only read, never written,
+   * so painting cannot disturb the physics on the tick thread.
+   * 
+   * @param g
+   *          the rendering engine
+   */
+  @Override
+  public void render(Graphics g)
+  {
+    TransformableContent prototype = getRasterPrototype();
+    if (!interpolating || prototype == null)
+    {
+      if (rasterCache == null || prototype == null)
+      {
+        super.render(g);
+      }
+      else if (isVisible())
+      {
+        rasterCache.render(g, prototype, x, y, angle, scaleX, scaleY);
+      }
+      return;
+    }
+
+    if (!isVisible())
+    {
+      return;
+    }
+
+    double t = alpha;
+    double drawX = previousX + (x - previousX) * t;
+    double drawY = previousY + (y - previousY) * t;
+    double drawAngle = previousAngle + (angle - previousAngle) * t;
+    if (rasterCache != null)
+    {
+      rasterCache.render(g, prototype, drawX, drawY, drawAngle, scaleX, scaleY);
+      return;
+    }
+
+    synchronized (prototype)
+    {
+      pose(prototype, drawX, drawY, drawAngle);
+      prototype.render(g);
+    }
+  }
+
+  /**
+   * Jumps if a jump is currently legal and notifies the jump listener. Subclasses should call this
+   * from handleKeyPress rather than calling jump directly, so that jumps can be recorded.
+   * 
+   * @return true if the protagonist jumped
+   */
+  public boolean requestJump()
+  {
+    if (!canJump())
+    {
+      return false;
+    }
+
+    jump();
+    if (jumpListener != null)
+    {
+      jumpListener.jumped(this, stepCount + 1);
+    }
+    return true;
+  }
+
+  /**
+   * Restarts the physics clock at the given time, dropping accumulated time and interpolation.
+   * The step count is reset to 0 and a jump schedule starts over.
+   * 
+   * @param time
+   *          time the clock restarts at
+   */
+  public void resetPhysicsClock(int time)
+  {
+    resetPhysicsClock(time, 0);
+  }
+
+  /**
+   * Restarts the physics clock at the given time with the given number of steps already taken, as
+   * when resuming a run from a checkpoint. A jump schedule resumes with the first jump after those
+   * steps, and recorded jumps keep counting from the start of the run.
+   * 
+   * @param time
+   *          time the clock restarts at
+   * @param steps
+   *          number of steps taken before the given time
+   */
+  public void resetPhysicsClock(int time, int steps)
+  {
+    physicsTime = time;
+    lastTickTime = time;
+    accumulator = 0;
+    alpha = 0.0;
+    interpolating = false;
+    clockStarted = true;
+    stepCount = steps;
+    nextScheduled = 0;
+  }
+
+  /**
+   * Restores movement state captured by saveState. Subclasses that override saveState must
+   * override this method as well.
+   * 
+   * @param state
+   *          state returned by saveState
+   */
+  public void restoreState(double[] state)
+  {
+    x = state[0];
+    y = state[1];
+    interpolating = false;
+  }
+
+  /**
+   * Captures the protagonist's movement state, so that a simulation can branch from it and return
+   * to it later. The location is captured by default; subclasses with further movement state should
+   * override this method, keeping the location in the first two elements.
+   * 
+   * @return the movement state
+   */
+  public double[] saveState()
+  {
+    return new double[] { x, y };
+  }
+
+  /**
+   * Captures only the vertical movement state. Two protagonists at the same time with the same
+   * vertical state are treated as equivalent by searches over jump timings, since horizontal
+   * position does not change, so the state must include every field other than the horizontal
+   * position that affects later steps or collisions, such as the rotation. The vertical position
+   * is captured by default.
+   * 
+   * @return the vertical movement state
+   */
+  public double[] saveVerticalState()
+  {
+    return new double[] { y };
+  }
+
+  /**
+   * Replaces the broad-phase collision index. Current antagonists are moved to the new index.
+   * 
+   * @param newBroadPhase
+   *          the new broad phase
+   */
+  public void setBroadPhase(BroadPhase newBroadPhase)
+  {
+    newBroadPhase.clear();
+    for (Sprite s : antagonists)
+    {
+      newBroadPhase.add(s);
+    }
+    broadPhase = newBroadPhase;
+    broadPhaseStale = true;
+  }
+
+  /**
+   * Sets the raster cache used to paint this sprite. Cached painting rounds the sprite's rotation
+   * and scale to the cache's buckets.
+   * 
+   * @param cache
+   *          the raster cache, or null to paint the sprite as vector content
+   */
+  public void setRasterCache(RasterCache cache)
+  {
+    rasterCache = cache;
+  }
+
+  /**
+   * Advances the protagonist's movement by one physics step: one tick, or one physics step if a
+   * physics step is set.
+   * 
+   * @param time
+   *          time at the end of the step
+   */
+  public abstract void step(int time);
+
+  /**
+   * Sets the listener notified of every jump made through requestJump.
+   * 
+   * @param listener
+   *          the listener, or null for none
+   */
+  public void setJumpListener(JumpListener listener)
+  {
+    jumpListener = listener;
+  }
+
+  /**
+   * Scripts the protagonist's jumps: a jump is requested before each physics step whose 1-based
+   * number is in the schedule, counted from the last reset of the physics clock, and key presses
+   * are ignored. This plays back the jump ticks recorded from a run.
+   * 
+   * @param steps
+   *          ascending step numbers to jump at, or null to return control to key input
+   */
+  public void setJumpSchedule(int[] steps)
+  {
+    jumpSchedule = (steps == null) ? null : steps.clone();
+    nextScheduled = 0;
+  }
+
+  /**
+   * Sets the fixed physics time step. With a physics step, handleTick advances the protagonist in
+   * whole physics steps, and render draws it interpolated between them if it has a raster
+   * prototype.
+   * 
+   * @param step
+   *          the physics time step, or 0 to step once per tick
+   * @throws IllegalArgumentException
+   *           if step is negative
+   */
+  public void setPhysicsStep(int step) throws IllegalArgumentException
+  {
+    if (step < 0)
+    {
+      throw new IllegalArgumentException("Physics step cannot be negative");
+    }
+    physicsStep = step;
+    clockStarted = false;
+    interpolating = false;
+  }
+
   /**
    * Sets the time at which the protagonist will signal a victory event.
    * 
@@ -1,6 +1,10 @@
 package arcade.elements;
 
+import java.awt.Graphics;
+import java.awt.geom.Point2D;
+
 import visual.dynamic.described.DescribedSprite;
+import visual.statik.TransformableContent;
 
 /**
  * Abstract class parent to terrain based sprites to be contained in a Level collection.
@@ -16,6 +20,15 @@ public abstract class AbstractTerrainSprite extends DescribedSprite
   protected int startTime;
   protected double initialY;
 
+  private int lastKeyTime;
+  private boolean removedAtEnd;
+
+  private KeyframeTrack track;
+  private TransformableContent trackContent;
+  private RasterCache rasterCache;
+  private KeyframeBatch batch;
+  private int batchSlot;
+
   /**
    * Explicit value constructor. Creates a new TerrainSprite child with a startTime parameter.
    * 
@@ -29,6 +42,83 @@ public abstract class AbstractTerrainSprite extends DescribedSprite
     super();
     this.startTime = startTime;
     this.initialY = initialY;
+    this.lastKeyTime = startTime;
+  }
+
+  /**
+   * Explicit value constructor. Creates a new TerrainSprite child that plays a shared keyframe
+   * track, offset by its start time and initial y position, instead of owning its own key frames.
+   * 
+   * @param startTime
+   *          spawn time
+   * @param initialY
+   *          initial y position
+   * @param track
+   *          shared keyframe track
+   * @param content
+   *          content shown for the whole track
+   */
+  public AbstractTerrainSprite(int startTime, double initialY, KeyframeTrack track,
+      TransformableContent content)
+  {
+    this(startTime, initialY);
+    this.track = track;
+    this.trackContent = content;
+    this.lastKeyTime = startTime + track.getEndTime();
+  }
+
+  /**
+   * Moves the sprite to a position computed by its KeyframeBatch.
+   * 
+   * @param show
+   *          false if the sprite is not part of the scene
+   * @param newX
+   *          horizontal position
+   * @param newY
+   *          vertical position
+   * @param newRotation
+   *          rotation angle
+   * @param newScale
+   *          scaling
+   */
+  void applyFrame(boolean show, double newX, double newY, double newRotation, double newScale)
+  {
+    if (!show)
+    {
+      setVisible(false);
+      return;
+    }
+
+    setLocation(newX, newY);
+    setRotation(newRotation);
+    setScale(newScale);
+    setVisible(true);
+  }
+
+  /**
+   * Adds a key time to the sprite, recording the latest key time so that the sprite's lifetime is
+   * known without walking its keyframes.
+   * 
+   * @param keyTime
+   *          the key time
+   * @param location
+   *          the location at the key time
+   * @param rotation
+   *          the rotation at the key time
+   * @param scaling
+   *          the scaling at the key time
+   * @param content
+   *          the content at the key time (or null to keep the previous content)
+   */
+  @Override
+  public void addKeyTime(int keyTime, Point2D location, Double rotation, Double scaling,
+      TransformableContent content)
+  {
+    super.addKeyTime(keyTime, location, rotation, scaling, content);
+    if (keyTime > lastKeyTime)
+    {
+      lastKeyTime = keyTime;
+    }
   }
 
   /**
@@ -68,6 +158,53 @@ public abstract class AbstractTerrainSprite extends DescribedSprite
    */
   public abstract AbstractTerrainSprite duplicate();
 
+  /**
+   * Returns the KeyframeBatch moving this sprite.
+   * 
+   * @return the batch, or null if the sprite moves itself
+   */
+  KeyframeBatch getBatch()
+  {
+    return batch;
+  }
+
+  /**
+   * Returns the sprite's slot in its KeyframeBatch.
+   * 
+   * @return the slot
+   */
+  int getBatchSlot()
+  {
+    return batchSlot;
+  }
+
+  /**
+   * Returns the content of the sprite. Sprites that play a shared track always show the content
+   * they were constructed with.
+   * 
+   * @return the current content
+   */
+  @Override
+  public TransformableContent getContent()
+  {
+    if (track == null)
+    {
+      return super.getContent();
+    }
+    return trackContent;
+  }
+
+  /**
+   * Returns the time of the last key frame. After this time a sprite with a REMOVE end state is no
+   * longer part of the scene.
+   * 
+   * @return the end time
+   */
+  public int getEndTime()
+  {
+    return lastKeyTime;
+  }
+
   /**
    * Returns the initial y value.
    * 
@@ -78,6 +215,49 @@ public abstract class AbstractTerrainSprite extends DescribedSprite
     return initialY;
   }
 
+  /**
+   * Returns the shared keyframe track played by this sprite.
+   * 
+   * @return the track, or null if the sprite owns its key frames
+   */
+  public KeyframeTrack getKeyframeTrack()
+  {
+    return track;
+  }
+
+  /**
+   * Returns content that looks like this sprite's content and is only used to fill raster caches.
+   * The cache transforms it while rasterizing, so it must not be the content of any sprite; sprites
+   * that look alike should return one shared instance, so that they share cached images.
+   * 
+   * @return the raster prototype, or null to paint the sprite as vector content even when a raster
+   *         cache is set
+   */
+  protected TransformableContent getRasterPrototype()
+  {
+    return null;
+  }
+
+  /**
+   * Returns the raster cache used to paint this sprite.
+   * 
+   * @return the raster cache, or null if the sprite is painted as vector content
+   */
+  public RasterCache getRasterCache()
+  {
+    return rasterCache;
+  }
+
+  /**
+   * Returns the time after which the sprite is removed from the scene.
+   * 
+   * @return the end time for a REMOVE end state, Integer.MAX_VALUE otherwise
+   */
+  int getRemoveTime()
+  {
+    return removedAtEnd ? lastKeyTime : Integer.MAX_VALUE;
+  }
+
   /**
    * Returns the start time for this TerrainSprite.
    * 
@@ -87,4 +267,174 @@ public abstract class AbstractTerrainSprite extends DescribedSprite
   {
     return startTime;
   }
+
+  /**
+   * Returns the number of milliseconds between the start time and the last key frame.
+   * 
+   * @return the keyframe lifetime
+   */
+  public int getLifetime()
+  {
+    return lastKeyTime - startTime;
+  }
+
+  /**
+   * Moves the sprite to its position at the given time. Sprites that play a shared track look up
+   * the track segment once and interpolate straight from its arrays; other sprites use their own
+   * key frames. Sprites in a KeyframeBatch are moved by the batch and ignore the tick.
+   * 
+   * @param time
+   *          the current time
+   */
+  @Override
+  public void handleTick(int time)
+  {
+    if (track == null)
+    {
+      super.handleTick(time);
+      return;
+    }
+    if (batch != null)
+    {
+      return;
+    }
+
+    int t = time - startTime;
+    if (t < 0 || isRemovedAt(time))
+    {
+      setVisible(false);
+      return;
+    }
+
+    int segment = track.segmentAt(t);
+    setLocation(track.getX(segment, t), initialY + track.getY(segment, t));
+    setRotation(track.getRotation(segment, t));
+    setScale(track.getScale(segment, t));
+    setVisible(true);
+  }
+
+  /**
+   * Returns true if the sprite can be moved to a new start time and initial y position with
+   * relocate. Only sprites that play a shared keyframe track can be relocated.
+   * 
+   * @return true if the sprite can be relocated
+   */
+  public boolean isRelocatable()
+  {
+    return track != null;
+  }
+
+  /**
+   * Returns true if this sprite has reached its REMOVE end state at the given time.
+   * 
+   * @param time
+   *          the current time
+   * @return true if the sprite is removed at the given time
+   */
+  public boolean isRemovedAt(int time)
+  {
+    return removedAtEnd && time > lastKeyTime;
+  }
+
+  /**
+   * Gives the sprite a new start time and initial y position and resets it, so that a sprite which
+   * has left the scene can be reused for another obstacle of the same type.
+   * 
+   * @param newStartTime
+   *          new spawn time
+   * @param newInitialY
+   *          new initial y position
+   * @throws UnsupportedOperationException
+   *           if the sprite owns its own key frames
+   */
+  public void relocate(int newStartTime, double newInitialY) throws UnsupportedOperationException
+  {
+    if (track == null)
+    {
+      throw new UnsupportedOperationException("Only sprites that play a shared track can move");
+    }
+
+    startTime = newStartTime;
+    initialY = newInitialY;
+    lastKeyTime = startTime + track.getEndTime();
+    if (batch != null)
+    {
+      batch.reload(this);
+    }
+    resetToInitial();
+  }
+
+  /**
+   * Renders the sprite, as a single cached image if a raster cache and a raster prototype are set.
+   * 
+   * @param g
+   *          the rendering engine
+   */
+  @Override
+  public void render(Graphics g)
+  {
+    TransformableContent prototype = (rasterCache == null) ? null : getRasterPrototype();
+    if (prototype == null)
+    {
+      super.render(g);
+    }
+    else if (isVisible())
+    {
+      rasterCache.render(g, prototype, x, y, angle, scaleX, scaleY);
+    }
+  }
+
+  /**
+   * Returns the sprite to its initial state in place, so that it can be played again without being
+   * duplicated. The sprite is made visible and positioned at its start time. Subclasses that keep
+   * additional state should override this method and call it.
+   */
+  public void resetToInitial()
+  {
+    setVisible(true);
+    handleTick(startTime);
+  }
+
+  /**
+   * Sets the end state of the sprite, recording whether it is removed after its last key frame.
+   * 
+   * @param state
+   *          REMAIN or REMOVE
+   */
+  @Override
+  public void setEndState(int state)
+  {
+    super.setEndState(state);
+    removedAtEnd = (state == REMOVE);
+    if (batch != null)
+    {
+      batch.reload(this);
+    }
+  }
+
+  /**
+   * Sets the KeyframeBatch moving this sprite; called by the batch.
+   * 
+   * @param newBatch
+   *          the batch, or null
+   * @param slot
+   *          the sprite's slot in the batch
+   */
+  void setBatch(KeyframeBatch newBatch, int slot)
+  {
+    batch = newBatch;
+    batchSlot = slot;
+  }
+
+  /**
+   * Sets the raster cache used to paint this sprite. Cached painting rounds the sprite's rotation
+   * and scale to the cache's buckets.
+   * 
+   * @param cache
+   *          the raster cache, or null to paint the sprite as vector content
+   */
+  public void setRasterCache(RasterCache cache)
+  {
+    rasterCache = cache;
+  }
 }
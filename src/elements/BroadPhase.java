@@ -0,0 +1,62 @@
+package arcade.elements;
+
+import java.util.Collection;
+
+import visual.dynamic.described.Sprite;
+
+/**
+ * Broad-phase collision index for a protagonist's antagonists. A BroadPhase narrows the set of
+ * antagonists down to those whose horizontal extent overlaps a query column, so that only those
+ * candidates reach the exact collision test.
+ * 
+ * @author John Latino
+ *
+ */
+public interface BroadPhase
+{
+  /**
+   * Adds a sprite to the index.
+   * 
+   * @param sprite
+   *          sprite to add
+   */
+  public void add(Sprite sprite);
+
+  /**
+   * Removes every sprite from the index.
+   */
+  public void clear();
+
+  /**
+   * Collects every indexed sprite whose horizontal extent overlaps the column [minX, maxX].
+   * 
+   * @param minX
+   *          left edge of the column
+   * @param maxX
+   *          right edge of the column
+   * @param candidates
+   *          receives the overlapping sprites
+   */
+  public void query(double minX, double maxX, Collection<Sprite> candidates);
+
+  /**
+   * Removes a sprite from the index.
+   * 
+   * @param sprite
+   *          sprite to remove
+   * @return true if the sprite was indexed
+   */
+  public boolean remove(Sprite sprite);
+
+  /**
+   * Returns the number of indexed sprites.
+   * 
+   * @return number of sprites
+   */
+  public int size();
+
+  /**
+   * Refreshes the index after the indexed sprites have moved.
+   */
+  public void update();
+}
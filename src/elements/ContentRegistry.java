@@ -0,0 +1,91 @@
+package arcade.elements;
+
+import java.awt.Color;
+import java.awt.Paint;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.geom.RectangularShape;
+import java.util.HashMap;
+
+import visual.statik.described.Content;
+
+/**
+ * Registry of shared, immutable content geometry. Shapes and strokes with the same value are
+ * stored once, and every described Content created through the registry draws from the stored
+ * instances. Only the geometry is shared: a Content keeps its location, rotation and scale itself,
+ * and that transform must stay private to the sprite that owns the content, so every sprite still
+ * owns its Content objects. Content classes that are instantiated often should share their
+ * geometry once, in static constants, rather than build a shape on every construction only to have
+ * it interned. The stored shapes and strokes must not be modified.
+ * 
+ * @author John Latino
+ *
+ */
+public class ContentRegistry
+{
+  private static HashMap<Object, Object> values = new HashMap<Object, Object>();
+
+  /**
+   * Returns a new Content whose shape and stroke are the registry's shared instances of the given
+   * ones. RectangularShapes are compared by value and copied, so the caller remains free to reuse
+   * its shape; other shapes are compared by their own equals method.
+   * 
+   * @param shape
+   *          the shape
+   * @param color
+   *          outline color
+   * @param paint
+   *          fill paint
+   * @param stroke
+   *          outline stroke
+   * @return a new content
+   */
+  public static Content getContent(Shape shape, Color color, Paint paint, Stroke stroke)
+  {
+    return new Content(intern(shape), color, paint, intern(stroke));
+  }
+
+  /**
+   * Returns the registry's instance equal to the given shape or stroke, storing it on first use.
+   * RectangularShapes are compared by value and copied; other values are compared by their own
+   * equals method.
+   * 
+   * @param value
+   *          the shape or stroke, or null
+   * @return the shared instance, or null
+   */
+  public static <T> T share(T value)
+  {
+    return intern(value);
+  }
+
+  /**
+   * Returns the number of distinct shapes and strokes in the registry.
+   * 
+   * @return number of registered values
+   */
+  public static synchronized int size()
+  {
+    return values.size();
+  }
+
+  /**
+   * Returns the registry's instance equal to the given value, storing it on first use.
+   */
+  @SuppressWarnings("unchecked")
+  private static synchronized <T> T intern(T value)
+  {
+    if (value == null)
+    {
+      return null;
+    }
+
+    Object shared = values.get(value);
+    if (shared == null)
+    {
+      shared = (value instanceof RectangularShape) ? ((RectangularShape) value).clone() : value;
+      values.put(shared, shared);
+    }
+    return (T) shared;
+  }
+}
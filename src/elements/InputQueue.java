@@ -0,0 +1,201 @@
+package arcade.elements;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free single-producer, single-consumer ring buffer of timestamped key presses. The event
+ * thread offers key presses and the tick thread drains them, so input state is only ever changed
+ * on the tick thread. Neither side allocates or blocks; when the buffer is full, new key presses
+ * are dropped and counted. The time each key press waits in the buffer is recorded as its input
+ * latency.
+ *
+ * @author John Latino
+ *
+ */
+public class InputQueue
+{
+  /**
+   * Receives the key presses drained from an InputQueue.
+   */
+  public interface Handler
+  {
+    /**
+     * Handles one key press.
+     *
+     * @param keyCode
+     *          the key code of the event
+     * @param keyChar
+     *          the key character of the event
+     * @param timestamp
+     *          System.nanoTime() when the key press arrived
+     */
+    public void handleKeyPress(int keyCode, char keyChar, long timestamp);
+  }
+
+  private int mask;
+  private int[] keyCodes;
+  private char[] keyChars;
+  private long[] timestamps;
+
+  // next slot to read, written by the consumer
+  private AtomicLong head;
+  // next slot to write, written by the producer
+  private AtomicLong tail;
+  private long cachedHead, cachedTail;
+
+  private AtomicLong dropped;
+  private volatile long latencyCount, latencyTotal, latencyMax;
+
+  /**
+   * Constructs an InputQueue.
+   *
+   * @param capacity
+   *          minimum number of key presses the queue holds; rounded up to a power of two
+   * @throws IllegalArgumentException
+   *           if capacity is not positive
+   */
+  public InputQueue(int capacity) throws IllegalArgumentException
+  {
+    if (capacity <= 0 || capacity > (1 << 30))
+    {
+      throw new IllegalArgumentException("Capacity must be positive");
+    }
+
+    int size = Integer.highestOneBit(capacity);
+    if (size < capacity)
+    {
+      size <<= 1;
+    }
+    mask = size - 1;
+    keyCodes = new int[size];
+    keyChars = new char[size];
+    timestamps = new long[size];
+    head = new AtomicLong();
+    tail = new AtomicLong();
+    dropped = new AtomicLong();
+  }
+
+  /**
+   * Hands every queued key press to the handler, oldest first, and records their latencies. Must
+   * only be called from the consumer thread.
+   *
+   * @param handler
+   *          receives the key presses
+   * @return number of key presses drained
+   */
+  public int drain(Handler handler)
+  {
+    long h = head.get();
+    if (h == cachedTail)
+    {
+      cachedTail = tail.get();
+      if (h == cachedTail)
+      {
+        return 0;
+      }
+    }
+
+    long now = System.nanoTime();
+    long count = latencyCount, total = latencyTotal, max = latencyMax;
+    int drained = 0;
+    for (; h < cachedTail; h++, drained++)
+    {
+      int i = (int) h & mask;
+      long latency = now - timestamps[i];
+      count++;
+      total += latency;
+      max = Math.max(max, latency);
+      handler.handleKeyPress(keyCodes[i], keyChars[i], timestamps[i]);
+    }
+    head.lazySet(h);
+
+    latencyCount = count;
+    latencyTotal = total;
+    latencyMax = max;
+    return drained;
+  }
+
+  /**
+   * Returns the number of key presses dropped because the queue was full.
+   *
+   * @return dropped key presses
+   */
+  public long getDroppedCount()
+  {
+    return dropped.get();
+  }
+
+  /**
+   * Returns the number of key presses drained.
+   *
+   * @return drained key presses
+   */
+  public long getLatencyCount()
+  {
+    return latencyCount;
+  }
+
+  /**
+   * Returns the longest time a key press waited before it was drained.
+   *
+   * @return maximum input latency in nanoseconds
+   */
+  public long getLatencyMax()
+  {
+    return latencyMax;
+  }
+
+  /**
+   * Returns the mean time key presses waited before they were drained.
+   *
+   * @return mean input latency in nanoseconds, or 0 if none were drained
+   */
+  public double getLatencyMean()
+  {
+    long count = latencyCount;
+    return (count == 0) ? 0.0 : (double) latencyTotal / count;
+  }
+
+  /**
+   * Queues a key press. Must only be called from the producer thread.
+   *
+   * @param keyCode
+   *          the key code of the event
+   * @param keyChar
+   *          the key character of the event
+   * @param timestamp
+   *          System.nanoTime() when the key press arrived
+   * @return true if the key press was queued, false if the queue was full
+   */
+  public boolean offer(int keyCode, char keyChar, long timestamp)
+  {
+    long t = tail.get();
+    if (t - cachedHead > mask)
+    {
+      cachedHead = head.get();
+      if (t - cachedHead > mask)
+      {
+        dropped.incrementAndGet();
+        return false;
+      }
+    }
+
+    int i = (int) t & mask;
+    keyCodes[i] = keyCode;
+    keyChars[i] = keyChar;
+    timestamps[i] = timestamp;
+    tail.lazySet(t + 1);
+    return true;
+  }
+
+  /**
+   * Clears the latency and drop statistics. Must only be called from the consumer thread.
+   */
+  public void resetStatistics()
+  {
+    latencyCount = 0;
+    latencyTotal = 0;
+    latencyMax = 0;
+    dropped.set(0);
+  }
+}
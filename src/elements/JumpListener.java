@@ -0,0 +1,20 @@
+package arcade.elements;
+
+/**
+ * Listener notified when a protagonist jumps in response to a jump request.
+ * 
+ * @author John Latino
+ *
+ */
+public interface JumpListener
+{
+  /**
+   * Called after the protagonist has started a jump, before the physics step it takes effect in.
+   * 
+   * @param protagonist
+   *          the protagonist that jumped
+   * @param step
+   *          the 1-based number of the physics step the jump takes effect in
+   */
+  public void jumped(AbstractProtagonistSprite protagonist, int step);
+}
@@ -0,0 +1,332 @@
+package arcade.elements;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Evaluates the keyframe tracks of many terrain sprites at once. The batch keeps each added
+ * sprite's start time, initial y, track and current segment in parallel primitive arrays and
+ * interpolates all of them in one loop, without calling into the sprites; apply then writes the
+ * results back to the sprites for painting. Segments are found by stepping forward from the
+ * previous tick's segment, so the lookup is constant time while time moves forward.
+ *
+ * Only sprites that play a shared KeyframeTrack can be batched. While a sprite is in a batch its
+ * handleTick does nothing; the batch moves it instead. A batch produces exactly the positions the
+ * sprites' own handleTick would.
+ *
+ * Large batches can be updated on a ForkJoinPool. The sprites are split into contiguous ranges
+ * that are evaluated and applied independently, so the results are identical to a sequential
+ * update whatever the split.
+ *
+ * @author John Latino
+ *
+ */
+public class KeyframeBatch
+{
+  // Fewest sprites a parallel task is split down to
+  private static final int MIN_GRAIN = 256;
+
+  private AbstractTerrainSprite[] sprites;
+  private KeyframeTrack[] tracks;
+  private int[] startTimes;
+  private int[] removeTimes;
+  private double[] initialYs;
+  private int[] segments;
+  private boolean[] visible;
+  private double[] x, y, rotation, scale;
+  private int size;
+
+  /**
+   * Constructs an empty KeyframeBatch.
+   */
+  public KeyframeBatch()
+  {
+    sprites = new AbstractTerrainSprite[16];
+    tracks = new KeyframeTrack[16];
+    startTimes = new int[16];
+    removeTimes = new int[16];
+    initialYs = new double[16];
+    segments = new int[16];
+    visible = new boolean[16];
+    x = new double[16];
+    y = new double[16];
+    rotation = new double[16];
+    scale = new double[16];
+  }
+
+  /**
+   * Adds a sprite to the batch, if it plays a shared keyframe track.
+   *
+   * @param sprite
+   *          the sprite
+   * @return true if the sprite was added, false if it owns its key frames or is already batched
+   */
+  public boolean add(AbstractTerrainSprite sprite)
+  {
+    if (!sprite.isRelocatable() || sprite.getBatch() != null)
+    {
+      return false;
+    }
+
+    if (size == sprites.length)
+    {
+      grow();
+    }
+    sprites[size] = sprite;
+    sprite.setBatch(this, size);
+    load(size);
+    size++;
+    return true;
+  }
+
+  /**
+   * Writes the positions computed by the last evaluate to the sprites.
+   */
+  public void apply()
+  {
+    apply(0, size);
+  }
+
+  /**
+   * Removes every sprite from the batch.
+   */
+  public void clear()
+  {
+    for (int i = 0; i < size; i++)
+    {
+      sprites[i].setBatch(null, -1);
+      sprites[i] = null;
+    }
+    size = 0;
+  }
+
+  /**
+   * Returns true if the sprite is moved by this batch.
+   *
+   * @param sprite
+   *          the sprite
+   * @return true if the sprite is in this batch
+   */
+  public boolean contains(AbstractTerrainSprite sprite)
+  {
+    return sprite.getBatch() == this;
+  }
+
+  /**
+   * Computes the position of every sprite in the batch at the given time.
+   *
+   * @param time
+   *          the current time
+   */
+  public void evaluate(int time)
+  {
+    evaluate(0, size, time);
+  }
+
+  /**
+   * Evaluates and applies the batch at the given time. Batches of at least threshold sprites are
+   * split across the pool; smaller batches, or all batches when pool is null, are updated on the
+   * calling thread. Either way the call returns once every sprite has been moved.
+   *
+   * @param time
+   *          the current time
+   * @param pool
+   *          pool to update large batches on, or null
+   * @param threshold
+   *          smallest batch that is updated in parallel
+   */
+  public void update(int time, ForkJoinPool pool, int threshold)
+  {
+    if (pool == null || size < threshold || size < 2 * MIN_GRAIN)
+    {
+      evaluate(0, size, time);
+      apply(0, size);
+      return;
+    }
+
+    int grain = Math.max(MIN_GRAIN, size / (4 * pool.getParallelism()));
+    pool.invoke(new Update(0, size, time, grain));
+  }
+
+  /**
+   * Writes the computed positions of a range of sprites to the sprites.
+   */
+  private void apply(int from, int to)
+  {
+    for (int i = from; i < to; i++)
+    {
+      sprites[i].applyFrame(visible[i], x[i], y[i], rotation[i], scale[i]);
+    }
+  }
+
+  /**
+   * Computes the positions of a range of sprites at the given time.
+   */
+  private void evaluate(int from, int to, int time)
+  {
+    for (int i = from; i < to; i++)
+    {
+      int t = time - startTimes[i];
+      if (t < 0 || time > removeTimes[i])
+      {
+        visible[i] = false;
+        continue;
+      }
+
+      KeyframeTrack track = tracks[i];
+      int[] times = track.times;
+      int last = times.length - 1;
+
+      // Step forward from the last segment; go back to a search if time moved backwards
+      int segment = segments[i];
+      if (t < times[segment])
+      {
+        segment = track.segmentAt(t);
+      }
+      while (segment < last - 1 && times[segment + 1] <= t)
+      {
+        segment++;
+      }
+      segments[i] = segment;
+
+      visible[i] = true;
+      if (segment >= last || t >= times[last])
+      {
+        x[i] = track.x[last];
+        y[i] = initialYs[i] + track.y[last];
+        rotation[i] = track.rotation[last];
+        scale[i] = track.scale[last];
+      }
+      else if (t <= times[segment])
+      {
+        x[i] = track.x[segment];
+        y[i] = initialYs[i] + track.y[segment];
+        rotation[i] = track.rotation[segment];
+        scale[i] = track.scale[segment];
+      }
+      else
+      {
+        double f = (t - times[segment]) * track.inverseSpan[segment];
+        x[i] = track.x[segment] + f * (track.x[segment + 1] - track.x[segment]);
+        y[i] = initialYs[i]
+            + (track.y[segment] + f * (track.y[segment + 1] - track.y[segment]));
+        rotation[i] = track.rotation[segment]
+            + f * (track.rotation[segment + 1] - track.rotation[segment]);
+        scale[i] = track.scale[segment] + f * (track.scale[segment + 1] - track.scale[segment]);
+      }
+    }
+  }
+
+  /**
+   * Removes a sprite from the batch. The last sprite takes its slot.
+   *
+   * @param sprite
+   *          the sprite
+   * @return true if the sprite was in this batch
+   */
+  public boolean remove(AbstractTerrainSprite sprite)
+  {
+    if (sprite.getBatch() != this)
+    {
+      return false;
+    }
+
+    int i = sprite.getBatchSlot();
+    sprite.setBatch(null, -1);
+    size--;
+    if (i != size)
+    {
+      sprites[i] = sprites[size];
+      tracks[i] = tracks[size];
+      startTimes[i] = startTimes[size];
+      removeTimes[i] = removeTimes[size];
+      initialYs[i] = initialYs[size];
+      segments[i] = segments[size];
+      sprites[i].setBatch(this, i);
+    }
+    sprites[size] = null;
+    tracks[size] = null;
+    return true;
+  }
+
+  /**
+   * Returns the number of sprites in the batch.
+   *
+   * @return number of sprites
+   */
+  public int size()
+  {
+    return size;
+  }
+
+  /**
+   * Reloads a batched sprite's start time, initial y and end state after they change.
+   *
+   * @param sprite
+   *          the sprite
+   */
+  void reload(AbstractTerrainSprite sprite)
+  {
+    load(sprite.getBatchSlot());
+  }
+
+  private void grow()
+  {
+    int capacity = sprites.length * 2;
+    sprites = Arrays.copyOf(sprites, capacity);
+    tracks = Arrays.copyOf(tracks, capacity);
+    startTimes = Arrays.copyOf(startTimes, capacity);
+    removeTimes = Arrays.copyOf(removeTimes, capacity);
+    initialYs = Arrays.copyOf(initialYs, capacity);
+    segments = Arrays.copyOf(segments, capacity);
+    visible = Arrays.copyOf(visible, capacity);
+    x = Arrays.copyOf(x, capacity);
+    y = Arrays.copyOf(y, capacity);
+    rotation = Arrays.copyOf(rotation, capacity);
+    scale = Arrays.copyOf(scale, capacity);
+  }
+
+  private void load(int i)
+  {
+    AbstractTerrainSprite s = sprites[i];
+    tracks[i] = s.getKeyframeTrack();
+    startTimes[i] = s.getStartTime();
+    removeTimes[i] = s.getRemoveTime();
+    initialYs[i] = s.getInitialY();
+    segments[i] = 0;
+  }
+
+  /**
+   * Fork-join task that halves its range of sprites until it is no larger than the grain, then
+   * evaluates and applies it.
+   */
+  private class Update extends RecursiveAction
+  {
+    private static final long serialVersionUID = 1L;
+
+    private int from, to, time, grain;
+
+    private Update(int from, int to, int time, int grain)
+    {
+      this.from = from;
+      this.to = to;
+      this.time = time;
+      this.grain = grain;
+    }
+
+    @Override
+    protected void compute()
+    {
+      if (to - from <= grain)
+      {
+        evaluate(from, to, time);
+        apply(from, to);
+        return;
+      }
+
+      int middle = (from + to) >>> 1;
+      invokeAll(new Update(from, middle, time, grain), new Update(middle, to, time, grain));
+    }
+  }
+}
@@ -0,0 +1,200 @@
+package arcade.elements;
+
+/**
+ * Immutable keyframe track stored in primitive arrays. Key times are relative to the start time of
+ * the sprite that plays the track and vertical positions are relative to its initial y value, so
+ * a single track can be shared by every terrain sprite that moves the same way.
+ * 
+ * @author John Latino
+ *
+ */
+public class KeyframeTrack
+{
+  // Read directly by KeyframeBatch
+  int[] times;
+  double[] x, y, rotation, scale;
+  double[] inverseSpan;
+
+  /**
+   * Explicit value constructor. All arrays must have the same, non-zero length and the times must
+   * be strictly increasing. The arrays are copied.
+   * 
+   * @param times
+   *          key times, relative to the sprite's start time
+   * @param x
+   *          horizontal position at each key time
+   * @param y
+   *          vertical position at each key time, relative to the sprite's initial y
+   * @param rotation
+   *          rotation angle at each key time
+   * @param scale
+   *          scaling at each key time
+   * @throws IllegalArgumentException
+   *           if the arrays are empty, differ in length, or the times are not increasing
+   */
+  public KeyframeTrack(int[] times, double[] x, double[] y, double[] rotation, double[] scale)
+      throws IllegalArgumentException
+  {
+    int n = times.length;
+    if (n == 0 || x.length != n || y.length != n || rotation.length != n || scale.length != n)
+    {
+      throw new IllegalArgumentException("Keyframe arrays must be non-empty and of equal length");
+    }
+
+    this.times = times.clone();
+    this.x = x.clone();
+    this.y = y.clone();
+    this.rotation = rotation.clone();
+    this.scale = scale.clone();
+
+    inverseSpan = new double[n];
+    for (int i = 0; i < n - 1; i++)
+    {
+      if (times[i + 1] <= times[i])
+      {
+        throw new IllegalArgumentException("Key times must be strictly increasing");
+      }
+      inverseSpan[i] = 1.0 / (times[i + 1] - times[i]);
+    }
+  }
+
+  /**
+   * Returns the time of the last key frame, relative to the first.
+   * 
+   * @return track duration
+   */
+  public int getDuration()
+  {
+    return times[times.length - 1] - times[0];
+  }
+
+  /**
+   * Returns the time of the last key frame, relative to the start time of the sprite that plays
+   * the track.
+   * 
+   * @return end time of the track
+   */
+  public int getEndTime()
+  {
+    return times[times.length - 1];
+  }
+
+  /**
+   * Returns the rotation angle within the given segment at the given relative time.
+   * 
+   * @param segment
+   *          segment returned by segmentAt
+   * @param t
+   *          time relative to the sprite's start time
+   * @return the interpolated rotation
+   */
+  public double getRotation(int segment, int t)
+  {
+    return interpolate(rotation, segment, t);
+  }
+
+  /**
+   * Returns the scaling within the given segment at the given relative time.
+   * 
+   * @param segment
+   *          segment returned by segmentAt
+   * @param t
+   *          time relative to the sprite's start time
+   * @return the interpolated scaling
+   */
+  public double getScale(int segment, int t)
+  {
+    return interpolate(scale, segment, t);
+  }
+
+  /**
+   * Returns the horizontal position within the given segment at the given relative time.
+   * 
+   * @param segment
+   *          segment returned by segmentAt
+   * @param t
+   *          time relative to the sprite's start time
+   * @return the interpolated horizontal position
+   */
+  public double getX(int segment, int t)
+  {
+    return interpolate(x, segment, t);
+  }
+
+  /**
+   * Returns the vertical offset within the given segment at the given relative time.
+   * 
+   * @param segment
+   *          segment returned by segmentAt
+   * @param t
+   *          time relative to the sprite's start time
+   * @return the interpolated vertical offset
+   */
+  public double getY(int segment, int t)
+  {
+    return interpolate(y, segment, t);
+  }
+
+  /**
+   * Returns the index of the key frame that starts the segment containing the given relative time.
+   * Times outside the track are clamped to the first or last segment.
+   * 
+   * @param t
+   *          time relative to the sprite's start time
+   * @return segment index
+   */
+  public int segmentAt(int t)
+  {
+    int low = 0;
+    int high = times.length - 2;
+    while (low < high)
+    {
+      int mid = (low + high + 1) >>> 1;
+      if (times[mid] <= t)
+      {
+        low = mid;
+      }
+      else
+      {
+        high = mid - 1;
+      }
+    }
+    return Math.max(low, 0);
+  }
+
+  /**
+   * Returns the number of key frames in the track.
+   * 
+   * @return number of key frames
+   */
+  public int size()
+  {
+    return times.length;
+  }
+
+  /**
+   * Linearly interpolates a keyed value, clamping to the first and last key frames.
+   * 
+   * @param values
+   *          the keyed values
+   * @param segment
+   *          segment index
+   * @param t
+   *          time relative to the sprite's start time
+   * @return the interpolated value
+   */
+  private double interpolate(double[] values, int segment, int t)
+  {
+    if (segment >= times.length - 1 || t >= times[times.length - 1])
+    {
+      return values[times.length - 1];
+    }
+    if (t <= times[segment])
+    {
+      return values[segment];
+    }
+
+    double f = (t - times[segment]) * inverseSpan[segment];
+    return values[segment] + f * (values[segment + 1] - values[segment]);
+  }
+}
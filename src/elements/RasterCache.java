@@ -0,0 +1,279 @@
+package arcade.elements;
+
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import visual.statik.TransformableContent;
+
+/**
+ * Cache of pre-rendered content. Content is rasterized into a compatible image once per
+ * rotation bucket and quantized scale, after which painting it is a single image blit instead of
+ * transforming and filling every shape. Rotations are rounded to the nearest of a fixed number of
+ * buckets and scales to the nearest 1/32, so cached painting is an approximation of vector
+ * painting. Images are evicted in least recently used order once their total size exceeds the
+ * cache's byte limit.
+ *
+ * Content is cached by identity and assumed not to change. The cache sets the content's location,
+ * rotation and scale while rasterizing, so the content passed in must be a prototype used for
+ * nothing but rasterizing, never the content of a sprite; sprites that look alike pass the same
+ * prototype and share its images.
+ *
+ * @author John Latino
+ *
+ */
+public class RasterCache
+{
+  private static final int SCALE_STEPS = 32;
+  // Transparent pixels added around each image to keep antialiased edges
+  private static final int PAD = 2;
+
+  private int buckets;
+  private long maxBytes;
+  private long bytes;
+  private long hits, misses;
+  private LinkedHashMap<RasterKey, Raster> rasters;
+  private RasterKey probe;
+
+  /**
+   * Constructs a RasterCache.
+   *
+   * @param buckets
+   *          number of rotation buckets in a full turn
+   * @param maxBytes
+   *          upper bound on the memory used by cached images
+   * @throws IllegalArgumentException
+   *           if buckets or maxBytes is not positive
+   */
+  public RasterCache(int buckets, long maxBytes) throws IllegalArgumentException
+  {
+    if (buckets <= 0 || maxBytes <= 0)
+    {
+      throw new IllegalArgumentException("Buckets and maximum size must be positive");
+    }
+
+    this.buckets = buckets;
+    this.maxBytes = maxBytes;
+    rasters = new LinkedHashMap<RasterKey, Raster>(16, 0.75f, true);
+    probe = new RasterKey();
+  }
+
+  /**
+   * Removes all cached images.
+   */
+  public synchronized void clear()
+  {
+    rasters.clear();
+    bytes = 0;
+  }
+
+  /**
+   * Returns the memory used by the cached images.
+   *
+   * @return size of the cached images in bytes
+   */
+  public synchronized long getBytes()
+  {
+    return bytes;
+  }
+
+  /**
+   * Returns the number of paints served from a cached image.
+   *
+   * @return number of cache hits
+   */
+  public synchronized long getHits()
+  {
+    return hits;
+  }
+
+  /**
+   * Returns the number of paints that had to rasterize the content first.
+   *
+   * @return number of cache misses
+   */
+  public synchronized long getMisses()
+  {
+    return misses;
+  }
+
+  /**
+   * Returns the number of cached images.
+   *
+   * @return number of cached images
+   */
+  public synchronized int size()
+  {
+    return rasters.size();
+  }
+
+  /**
+   * Paints the content at the given location, rotation and scale, rasterizing it first if no image
+   * is cached for its rotation bucket and scale. The content is rotated about its own default
+   * rotation point, as by TransformableContent.setRotation(double).
+   *
+   * @param g
+   *          the rendering engine
+   * @param content
+   *          raster prototype of the content to paint
+   * @param x
+   *          horizontal location
+   * @param y
+   *          vertical location
+   * @param rotation
+   *          rotation in radians
+   * @param scaleX
+   *          horizontal scale
+   * @param scaleY
+   *          vertical scale
+   */
+  public synchronized void render(Graphics g, TransformableContent content, double x, double y,
+      double rotation, double scaleX, double scaleY)
+  {
+    double turn = 2.0 * Math.PI;
+    int bucket = (int) Math.round((rotation - turn * Math.floor(rotation / turn)) / turn * buckets);
+
+    probe.content = content;
+    probe.bucket = bucket % buckets;
+    probe.scaleX = (int) Math.round(scaleX * SCALE_STEPS);
+    probe.scaleY = (int) Math.round(scaleY * SCALE_STEPS);
+
+    Raster raster = rasters.get(probe);
+    if (raster == null)
+    {
+      misses++;
+      RasterKey key = new RasterKey();
+      key.content = content;
+      key.bucket = probe.bucket;
+      key.scaleX = probe.scaleX;
+      key.scaleY = probe.scaleY;
+      raster = rasterize(key);
+      rasters.put(key, raster);
+      bytes += raster.bytes;
+      evict();
+    }
+    else
+    {
+      hits++;
+    }
+    probe.content = null;
+
+    g.drawImage(raster.image, (int) Math.round(x + raster.offsetX),
+        (int) Math.round(y + raster.offsetY), null);
+  }
+
+  /**
+   * Evicts least recently used images until the cache fits its byte limit, always keeping the most
+   * recent one.
+   */
+  private void evict()
+  {
+    Iterator<Map.Entry<RasterKey, Raster>> i = rasters.entrySet().iterator();
+    while (bytes > maxBytes && rasters.size() > 1)
+    {
+      bytes -= i.next().getValue().bytes;
+      i.remove();
+    }
+  }
+
+  /**
+   * Renders the content at the key's rotation and scale into a new image.
+   */
+  private Raster rasterize(RasterKey key)
+  {
+    TransformableContent content = key.content;
+    BufferedImage image;
+    int minX, minY, width, height;
+
+    // a prototype may be shared by several caches
+    synchronized (content)
+    {
+      content.setLocation(0.0, 0.0);
+      content.setRotation(key.bucket * 2.0 * Math.PI / buckets);
+      content.setScale((double) key.scaleX / SCALE_STEPS, (double) key.scaleY / SCALE_STEPS);
+
+      Rectangle2D bounds = content.getBounds2D(true);
+      minX = (int) Math.floor(bounds.getMinX()) - PAD;
+      minY = (int) Math.floor(bounds.getMinY()) - PAD;
+      width = Math.max(1, (int) Math.ceil(bounds.getMaxX()) + PAD - minX);
+      height = Math.max(1, (int) Math.ceil(bounds.getMaxY()) + PAD - minY);
+
+      image = createImage(width, height);
+      Graphics2D g = image.createGraphics();
+      g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+      g.translate(-minX, -minY);
+      content.render(g);
+      g.dispose();
+    }
+
+    Raster raster = new Raster();
+    raster.image = image;
+    raster.offsetX = minX;
+    raster.offsetY = minY;
+    raster.bytes = 4L * width * height;
+    return raster;
+  }
+
+  /**
+   * Creates a translucent image compatible with the screen, or a plain ARGB image when there is
+   * no screen.
+   */
+  private static BufferedImage createImage(int width, int height)
+  {
+    if (!GraphicsEnvironment.isHeadless())
+    {
+      GraphicsConfiguration config = GraphicsEnvironment.getLocalGraphicsEnvironment()
+          .getDefaultScreenDevice().getDefaultConfiguration();
+      return config.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+    }
+    return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+  }
+
+  /**
+   * Pre-rendered image and the offset of its top left corner from the content's location.
+   */
+  private static class Raster
+  {
+    private BufferedImage image;
+    private double offsetX, offsetY;
+    private long bytes;
+  }
+
+  /**
+   * Cache key: content identity, rotation bucket and quantized scale.
+   */
+  private static class RasterKey
+  {
+    private TransformableContent content;
+    private int bucket, scaleX, scaleY;
+
+    @Override
+    public boolean equals(Object o)
+    {
+      if (!(o instanceof RasterKey))
+      {
+        return false;
+      }
+      RasterKey other = (RasterKey) o;
+      return content == other.content && bucket == other.bucket && scaleX == other.scaleX
+          && scaleY == other.scaleY;
+    }
+
+    @Override
+    public int hashCode()
+    {
+      int hash = System.identityHashCode(content);
+      hash = 31 * hash + bucket;
+      hash = 31 * hash + scaleX;
+      return 31 * hash + scaleY;
+    }
+  }
+}
@@ -0,0 +1,199 @@
+package arcade.elements;
+
+import java.awt.geom.Rectangle2D;
+import java.util.Collection;
+
+import visual.dynamic.described.Sprite;
+
+/**
+ * BroadPhase that keeps its sprites sorted by the left edge of their bounds. Terrain in a
+ * side-scroller moves together, so the order barely changes between ticks and an insertion sort
+ * restores it in close to linear time. Queries binary search the sorted edges and only visit
+ * sprites that can overlap the query column.
+ * 
+ * @author John Latino
+ *
+ */
+public class SweepAndPrune implements BroadPhase
+{
+  private static final int INITIAL_CAPACITY = 16;
+
+  private Sprite[] sprites;
+  private double[] minX, maxX;
+  private double maxWidth;
+  private int count;
+
+  /**
+   * Default constructor. Creates an empty index.
+   */
+  public SweepAndPrune()
+  {
+    sprites = new Sprite[INITIAL_CAPACITY];
+    minX = new double[INITIAL_CAPACITY];
+    maxX = new double[INITIAL_CAPACITY];
+  }
+
+  @Override
+  public void add(Sprite sprite)
+  {
+    if (count == sprites.length)
+    {
+      int capacity = count * 2;
+      Sprite[] s = new Sprite[capacity];
+      double[] lo = new double[capacity];
+      double[] hi = new double[capacity];
+      System.arraycopy(sprites, 0, s, 0, count);
+      System.arraycopy(minX, 0, lo, 0, count);
+      System.arraycopy(maxX, 0, hi, 0, count);
+      sprites = s;
+      minX = lo;
+      maxX = hi;
+    }
+
+    sprites[count] = sprite;
+    setBounds(count, sprite.getBounds2D());
+    count++;
+    sortFrom(count - 1);
+  }
+
+  @Override
+  public void clear()
+  {
+    for (int i = 0; i < count; i++)
+    {
+      sprites[i] = null;
+    }
+    count = 0;
+    maxWidth = 0;
+  }
+
+  @Override
+  public void query(double lo, double hi, Collection<Sprite> candidates)
+  {
+    // first sprite whose left edge could still reach the column
+    int first = lowerBound(lo - maxWidth);
+    for (int i = first; i < count && minX[i] <= hi; i++)
+    {
+      if (maxX[i] >= lo)
+      {
+        candidates.add(sprites[i]);
+      }
+    }
+  }
+
+  @Override
+  public boolean remove(Sprite sprite)
+  {
+    for (int i = 0; i < count; i++)
+    {
+      if (sprites[i] == sprite)
+      {
+        int moved = count - i - 1;
+        System.arraycopy(sprites, i + 1, sprites, i, moved);
+        System.arraycopy(minX, i + 1, minX, i, moved);
+        System.arraycopy(maxX, i + 1, maxX, i, moved);
+        sprites[--count] = null;
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public int size()
+  {
+    return count;
+  }
+
+  @Override
+  public void update()
+  {
+    maxWidth = 0;
+    for (int i = 0; i < count; i++)
+    {
+      setBounds(i, sprites[i].getBounds2D());
+    }
+    for (int i = 1; i < count; i++)
+    {
+      sortFrom(i);
+    }
+  }
+
+  /**
+   * Returns the index of the first sprite whose left edge is at least x.
+   * 
+   * @param x
+   *          horizontal position
+   * @return index into the sorted arrays
+   */
+  private int lowerBound(double x)
+  {
+    int low = 0;
+    int high = count;
+    while (low < high)
+    {
+      int mid = (low + high) >>> 1;
+      if (minX[mid] < x)
+      {
+        low = mid + 1;
+      }
+      else
+      {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Records the horizontal extent of the sprite at index i.
+   * 
+   * @param i
+   *          index into the sorted arrays
+   * @param bounds
+   *          the sprite's bounds
+   */
+  private void setBounds(int i, Rectangle2D bounds)
+  {
+    if (bounds == null)
+    {
+      // content-less sprites can never be hit
+      minX[i] = Double.POSITIVE_INFINITY;
+      maxX[i] = Double.NEGATIVE_INFINITY;
+      return;
+    }
+
+    minX[i] = bounds.getMinX();
+    maxX[i] = bounds.getMaxX();
+    if (bounds.getWidth() > maxWidth)
+    {
+      maxWidth = bounds.getWidth();
+    }
+  }
+
+  /**
+   * Moves the entry at index i left until the entries up to i are sorted by left edge.
+   * 
+   * @param i
+   *          index of the entry to place
+   */
+  private void sortFrom(int i)
+  {
+    Sprite s = sprites[i];
+    double lo = minX[i];
+    double hi = maxX[i];
+
+    int j = i - 1;
+    while (j >= 0 && minX[j] > lo)
+    {
+      sprites[j + 1] = sprites[j];
+      minX[j + 1] = minX[j];
+      maxX[j + 1] = maxX[j];
+      j--;
+    }
+
+    sprites[j + 1] = s;
+    minX[j + 1] = lo;
+    maxX[j + 1] = hi;
+  }
+}
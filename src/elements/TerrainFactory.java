@@ -0,0 +1,22 @@
+package arcade.elements;
+
+/**
+ * Creates TerrainSprites of one type from their start time and initial y position. Factories let
+ * levels that are stored as data, rather than as Java code, materialize their sprites.
+ * 
+ * @author John Latino
+ *
+ */
+public interface TerrainFactory
+{
+  /**
+   * Creates a new TerrainSprite.
+   * 
+   * @param startTime
+   *          spawn time
+   * @param initialY
+   *          initial y position
+   * @return the new sprite
+   */
+  public AbstractTerrainSprite create(int startTime, double initialY);
+}
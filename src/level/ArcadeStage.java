@@ -0,0 +1,59 @@
+package arcade.level;
+
+import visual.dynamic.described.Stage;
+
+/**
+ * Stage that lets its owning LevelStage choose the game time of each tick, attach terrain before
+ * the sprites are ticked, and detach expired terrain and record metrics afterwards. In lockstep,
+ * one metronome tick plays a tick for every physics step the game time has reached.
+ * 
+ * @author John Latino
+ *
+ */
+class ArcadeStage extends Stage
+{
+  private LevelStage owner;
+
+  /**
+   * Constructs an ArcadeStage for the given LevelStage.
+   * 
+   * @param owner
+   *          the managing LevelStage
+   * @param timeStep
+   *          metronome time step
+   */
+  ArcadeStage(LevelStage owner, int timeStep)
+  {
+    super(timeStep);
+    this.owner = owner;
+  }
+
+  @Override
+  public void handleTick(int metronomeTime)
+  {
+    int time = owner.toGameTime(metronomeTime);
+    int step = owner.getLockstep();
+    if (step <= 0)
+    {
+      tick(time);
+      return;
+    }
+
+    // Play every physics step the game time has reached as a tick of its own
+    for (int t = owner.getLockstepTime() + step; t <= time; t += step)
+    {
+      owner.setLockstepTime(t);
+      tick(t);
+    }
+  }
+
+  /**
+   * Runs one tick of the level at the given game time.
+   */
+  private void tick(int time)
+  {
+    owner.beginTick(time);
+    super.handleTick(time);
+    owner.endTick(time);
+  }
+}
@@ -0,0 +1,36 @@
+package arcade.level;
+
+/**
+ * TerrainSource that knows its level's checkpoints and can move its cursor back to an earlier
+ * position, so that a LevelStage can restart from a checkpoint. Positions count the sprites handed
+ * out by next since the last rewind.
+ *
+ * @author John Latino
+ *
+ */
+public interface CheckpointableTerrainSource extends TerrainSource
+{
+  /**
+   * Returns the checkpoints of the level the source plays.
+   *
+   * @return ascending checkpoint times
+   */
+  public int[] getCheckpoints();
+
+  /**
+   * Returns the number of terrain sprites in the level the source plays.
+   *
+   * @return number of sprites
+   */
+  public int size();
+
+  /**
+   * Moves the cursor back to an earlier position, so that next hands out the sprite at that
+   * position again, in its initial state. Sprites handed out at or after the position must have
+   * been released first.
+   *
+   * @param position
+   *          number of sprites handed out since the last rewind, no greater than the current one
+   */
+  public void seek(int position);
+}
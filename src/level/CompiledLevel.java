@@ -0,0 +1,306 @@
+package arcade.level;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import arcade.elements.AbstractTerrainSprite;
+import arcade.elements.KeyframeTrack;
+import arcade.elements.TerrainFactory;
+
+/**
+ * Immutable, compiled form of a Level, created by Level.freeze. The terrain is stored as parallel
+ * arrays of start times, initial y positions and type ids in spawn order, plus the sorted
+ * checkpoints; each type is a factory that materializes a sprite from a prototype. Any number of
+ * stages may play a CompiledLevel at the same time without copying it and without locking, each
+ * through its own TerrainSource, so the level's memory is paid once however many players there
+ * are. Sprites of track-backed types are pooled per source and relocated for later obstacles;
+ * other sprites are duplicated from their prototype as they are reached.
+ *
+ * @author John Latino
+ *
+ */
+public class CompiledLevel
+{
+  private final int[] startTimes;
+  private final double[] initialYs;
+  private final int[] typeIds;
+  private final TerrainFactory[] types;
+  private final int[] checkpoints;
+
+  /**
+   * Compiles the given level. Later changes to the level are not reflected.
+   *
+   * @param level
+   *          the level to compile
+   */
+  CompiledLevel(Level level)
+  {
+    List<AbstractTerrainSprite> terrain = level.getSpawnIndex();
+    int count = terrain.size();
+    startTimes = new int[count];
+    initialYs = new double[count];
+    typeIds = new int[count];
+
+    // Track-backed sprites of one class and track share a type; others are a type of their own
+    HashMap<TypeKey, Integer> ids = new HashMap<TypeKey, Integer>();
+    TerrainFactory[] factories = new TerrainFactory[16];
+    int typeCount = 0;
+    for (int i = 0; i < count; i++)
+    {
+      AbstractTerrainSprite s = terrain.get(i);
+      startTimes[i] = s.getStartTime();
+      initialYs[i] = s.getInitialY();
+
+      Integer id = null;
+      TypeKey key = null;
+      if (s.isRelocatable())
+      {
+        key = new TypeKey(s.getClass(), s.getKeyframeTrack());
+        id = ids.get(key);
+      }
+      if (id == null)
+      {
+        id = typeCount++;
+        if (id == factories.length)
+        {
+          factories = Arrays.copyOf(factories, id * 2);
+        }
+        factories[id] = new PrototypeFactory(s.duplicate());
+        if (key != null)
+        {
+          ids.put(key, id);
+        }
+      }
+      typeIds[i] = id;
+    }
+
+    types = Arrays.copyOf(factories, typeCount);
+    checkpoints = level.getCheckpoints();
+  }
+
+  /**
+   * Returns the latest checkpoint at or before the given time.
+   *
+   * @param time
+   *          the time
+   * @return the checkpoint time, or Level.NO_CHECKPOINT if there is none
+   */
+  public int checkpointBefore(int time)
+  {
+    int i = Arrays.binarySearch(checkpoints, time);
+    i = (i >= 0) ? i : -i - 2;
+    return (i >= 0) ? checkpoints[i] : Level.NO_CHECKPOINT;
+  }
+
+  /**
+   * Returns the level's checkpoints.
+   *
+   * @return ascending checkpoint times
+   */
+  public int[] getCheckpoints()
+  {
+    return checkpoints.clone();
+  }
+
+  /**
+   * Returns the initial y position of the i-th terrain sprite.
+   *
+   * @param i
+   *          sprite index, in spawn order
+   * @return initial y position
+   */
+  public double getInitialY(int i)
+  {
+    return initialYs[i];
+  }
+
+  /**
+   * Returns the highest start time in the level plus Level.DEFAULT_LEVEL_END_OFFSET.
+   *
+   * @return Level end time
+   */
+  public int getLevelEndTime()
+  {
+    return getLevelEndTime(Level.DEFAULT_LEVEL_END_OFFSET);
+  }
+
+  /**
+   * Returns the highest start time in the level plus the given offset.
+   *
+   * @param offset
+   *          milliseconds to add
+   * @return Level end time
+   */
+  public int getLevelEndTime(int offset)
+  {
+    return ((startTimes.length == 0) ? 0 : startTimes[startTimes.length - 1]) + offset;
+  }
+
+  /**
+   * Returns the start time of the i-th terrain sprite.
+   *
+   * @param i
+   *          sprite index, in spawn order
+   * @return start time
+   */
+  public int getStartTime(int i)
+  {
+    return startTimes[i];
+  }
+
+  /**
+   * Returns the number of distinct terrain types in the level.
+   *
+   * @return number of types
+   */
+  public int getTypeCount()
+  {
+    return types.length;
+  }
+
+  /**
+   * Returns the type id of the i-th terrain sprite.
+   *
+   * @param i
+   *          sprite index, in spawn order
+   * @return type id
+   */
+  public int getTypeId(int i)
+  {
+    return typeIds[i];
+  }
+
+  /**
+   * Returns a new TerrainSource over the level. Sources are independent and may be used by
+   * different threads, and a stage playing one can restart from the level's checkpoints.
+   *
+   * @return a new terrain source
+   */
+  public CheckpointableTerrainSource newSource()
+  {
+    return new CompiledTerrainSource();
+  }
+
+  /**
+   * Returns the number of terrain sprites in the level.
+   *
+   * @return number of sprites
+   */
+  public int size()
+  {
+    return startTimes.length;
+  }
+
+  /**
+   * Factory that duplicates a prototype and moves the copy to the requested start time and initial
+   * y position when it is track-backed.
+   */
+  private static class PrototypeFactory implements TerrainFactory
+  {
+    private final AbstractTerrainSprite prototype;
+
+    private PrototypeFactory(AbstractTerrainSprite prototype)
+    {
+      this.prototype = prototype;
+    }
+
+    @Override
+    public AbstractTerrainSprite create(int startTime, double initialY)
+    {
+      AbstractTerrainSprite s = prototype.duplicate();
+      if (s.isRelocatable())
+      {
+        s.relocate(startTime, initialY);
+      }
+      return s;
+    }
+  }
+
+  /**
+   * Type of a track-backed sprite: its class and its shared keyframe track.
+   */
+  private static class TypeKey
+  {
+    private Class<?> type;
+    private KeyframeTrack track;
+
+    private TypeKey(Class<?> type, KeyframeTrack track)
+    {
+      this.type = type;
+      this.track = track;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+      return (o instanceof TypeKey) && ((TypeKey) o).type == type && ((TypeKey) o).track == track;
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return 31 * type.hashCode() + System.identityHashCode(track);
+    }
+  }
+
+  /**
+   * TerrainSource that reads the compiled arrays at a cursor.
+   */
+  private class CompiledTerrainSource implements CheckpointableTerrainSource
+  {
+    private int cursor;
+    private TerrainPool pool = new TerrainPool();
+
+    @Override
+    public AbstractTerrainSprite next()
+    {
+      if (cursor >= startTimes.length)
+      {
+        throw new NoSuchElementException();
+      }
+
+      AbstractTerrainSprite s = pool.acquire(types[typeIds[cursor]], startTimes[cursor],
+          initialYs[cursor]);
+      cursor++;
+      return s;
+    }
+
+    @Override
+    public int peekStartTime()
+    {
+      return (cursor < startTimes.length) ? startTimes[cursor] : Integer.MAX_VALUE;
+    }
+
+    @Override
+    public void release(AbstractTerrainSprite sprite)
+    {
+      pool.release(sprite);
+    }
+
+    @Override
+    public int[] getCheckpoints()
+    {
+      return CompiledLevel.this.getCheckpoints();
+    }
+
+    @Override
+    public int size()
+    {
+      return startTimes.length;
+    }
+
+    @Override
+    public void rewind()
+    {
+      cursor = 0;
+    }
+
+    @Override
+    public void seek(int position)
+    {
+      cursor = position;
+    }
+  }
+}
@@ -0,0 +1,411 @@
+package arcade.level;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Random;
+
+import arcade.elements.AbstractProtagonistSprite;
+import arcade.elements.AbstractTerrainSprite;
+import arcade.elements.TerrainFactory;
+
+/**
+ * TerrainSource that generates an endless course from a seed, beatable by a given protagonist.
+ * Each obstacle starts a random gap after the previous one, at a random initial y position within
+ * a range. The constructor measures the protagonist's jump and, for every height in the range, the
+ * jump timings that clear an obstacle of that height. The range is narrowed to the heights that can
+ * be cleared, and the smallest gap is raised so that the protagonist has landed from one obstacle
+ * before it has to act for the next, so every obstacle stays beatable with one jump. Obstacle
+ * heights are whole pixels and start times are multiples of the time step, as measured.
+ *
+ * Only the next obstacle is generated ahead of time and the sprites are pooled, so memory and
+ * per-tick cost stay constant however long the course runs. The same seed always produces the same
+ * course, including after a rewind.
+ *
+ * @author John Latino
+ *
+ */
+public class EndlessTerrainSource implements TerrainSource
+{
+  // Upper bound on the ticks a jump or an obstacle is followed for
+  private static final int MAX_JUMP_TICKS = 100000;
+  // Number of consecutive jumps whose poses are merged, since a jump may start where the last ended
+  private static final int MEASURED_JUMPS = 4;
+  // Jump tick that stands for no jump at all
+  private static final int NO_JUMP = Integer.MIN_VALUE;
+
+  private long seed;
+  private TerrainFactory factory;
+  private int timeStep;
+  private int minGap, maxGap;
+  private int minY, maxY;
+
+  private Random random;
+  private TerrainPool pool;
+  private int nextStartTime;
+  private double nextY;
+
+  /**
+   * Constructs an EndlessTerrainSource whose obstacles the given protagonist can clear. The first
+   * obstacle starts one minimum gap into the course.
+   *
+   * @param seed
+   *          seed of the course
+   * @param factory
+   *          factory creating the obstacles
+   * @param protagonist
+   *          protagonist playing the course, from its initial position; its state is restored
+   * @param timeStep
+   *          time step of the stage or simulation playing the course
+   * @param minGap
+   *          smallest time between the start times of two obstacles; raised if the protagonist
+   *          needs longer
+   * @param maxGap
+   *          largest time between the start times of two obstacles; raised to at least the
+   *          smallest gap
+   * @param minY
+   *          smallest initial y position of an obstacle
+   * @param maxY
+   *          largest initial y position of an obstacle
+   * @throws IllegalArgumentException
+   *           if the factory or protagonist is null, if timeStep or minGap is not positive, if a
+   *           maximum is smaller than its minimum, or if no height in the range can be cleared
+   */
+  public EndlessTerrainSource(long seed, TerrainFactory factory,
+      AbstractProtagonistSprite protagonist, int timeStep, int minGap, int maxGap, double minY,
+      double maxY) throws IllegalArgumentException
+  {
+    if (factory == null || protagonist == null)
+    {
+      throw new IllegalArgumentException("Factory and protagonist cannot be null");
+    }
+
+    if (timeStep <= 0)
+    {
+      throw new IllegalArgumentException("Time step must be a positive value");
+    }
+
+    if (minGap <= 0 || maxGap < minGap)
+    {
+      throw new IllegalArgumentException("Gaps must be positive and minGap <= maxGap");
+    }
+
+    if (maxY < minY)
+    {
+      throw new IllegalArgumentException("minY cannot be greater than maxY");
+    }
+
+    this.seed = seed;
+    this.factory = factory;
+    this.timeStep = timeStep;
+    fit(protagonist, minGap, maxGap, minY, maxY);
+    pool = new TerrainPool();
+    rewind();
+  }
+
+  /**
+   * Returns the time from the start of a jump until the protagonist can jump again, measured by
+   * playing a jump from its initial state. The protagonist's state is restored afterwards.
+   *
+   * @param protagonist
+   *          the protagonist
+   * @param timeStep
+   *          metronome time step
+   * @return jump duration in metronome time
+   */
+  public static int getJumpDuration(AbstractProtagonistSprite protagonist, int timeStep)
+  {
+    double[] saved = protagonist.saveState();
+    protagonist.goToInitial();
+
+    protagonist.jump();
+    int ticks = 0;
+    do
+    {
+      ticks++;
+      protagonist.step(ticks * timeStep);
+    }
+    while (!protagonist.canJump() && ticks < MAX_JUMP_TICKS);
+
+    protagonist.restoreState(saved);
+    return ticks * timeStep;
+  }
+
+  /**
+   * Returns the smallest time between the start times of two obstacles, after fitting it to the
+   * protagonist.
+   *
+   * @return the smallest gap
+   */
+  public int getMinGap()
+  {
+    return minGap;
+  }
+
+  /**
+   * Returns the largest initial y position of an obstacle, after fitting it to the protagonist.
+   *
+   * @return the largest initial y position
+   */
+  public int getMaxY()
+  {
+    return maxY;
+  }
+
+  /**
+   * Returns the smallest initial y position of an obstacle, after fitting it to the protagonist.
+   *
+   * @return the smallest initial y position
+   */
+  public int getMinY()
+  {
+    return minY;
+  }
+
+  /**
+   * Returns the seed of the course.
+   *
+   * @return the seed
+   */
+  public long getSeed()
+  {
+    return seed;
+  }
+
+  @Override
+  public AbstractTerrainSprite next()
+  {
+    AbstractTerrainSprite s = pool.acquire(factory, nextStartTime, nextY);
+    generate();
+    return s;
+  }
+
+  @Override
+  public int peekStartTime()
+  {
+    return nextStartTime;
+  }
+
+  @Override
+  public void release(AbstractTerrainSprite sprite)
+  {
+    pool.release(sprite);
+  }
+
+  @Override
+  public void rewind()
+  {
+    random = new Random(seed);
+    nextStartTime = 0;
+    generate();
+  }
+
+  /**
+   * Draws the start time and initial y position of the next obstacle. Gaps are rounded up to a
+   * whole number of time steps.
+   */
+  private void generate()
+  {
+    int gap = minGap + random.nextInt(maxGap - minGap + 1);
+    nextStartTime += (gap + timeStep - 1) / timeStep * timeStep;
+    nextY = minY + random.nextInt(maxY - minY + 1);
+  }
+
+  /**
+   * Narrows the heights to the run of clearable heights nearest maxY and raises the gaps so that
+   * the windows in which consecutive obstacles need the protagonist never overlap. An obstacle is
+   * tested against the protagonist standing, and jumping at every start tick, each step against
+   * the obstacle as it was at the end of the previous tick, as SolvabilityChecker does. Its window
+   * runs from the first tick at which it can reach the protagonist, or the latest jump that clears
+   * it if that is earlier, to the tick by which it has passed and the protagonist has landed.
+   */
+  private void fit(AbstractProtagonistSprite protagonist, int minGap, int maxGap, double minY,
+      double maxY)
+  {
+    ArrayList<Rectangle2D> poses = new ArrayList<Rectangle2D>();
+    Rectangle2D standing = measureJump(protagonist, poses);
+    Rectangle2D column = (Rectangle2D) standing.clone();
+    for (Rectangle2D pose : poses)
+    {
+      column.add(pose);
+    }
+
+    int low = (int) Math.ceil(minY);
+    int highest = Integer.MIN_VALUE;
+    int lowest = Integer.MIN_VALUE;
+    int windowStart = 0;
+    int windowEnd = 0;
+    ArrayList<Rectangle2D> passing = new ArrayList<Rectangle2D>();
+    int[] window = new int[2];
+    for (int y = (int) Math.floor(maxY); y >= low; y--)
+    {
+      if (!clears(y, column, standing, poses, passing, window))
+      {
+        if (highest != Integer.MIN_VALUE)
+        {
+          break;
+        }
+        continue;
+      }
+
+      if (highest == Integer.MIN_VALUE)
+      {
+        highest = y;
+        windowStart = window[0];
+        windowEnd = window[1];
+      }
+      lowest = y;
+      windowStart = Math.min(windowStart, window[0]);
+      windowEnd = Math.max(windowEnd, window[1]);
+    }
+
+    if (highest == Integer.MIN_VALUE)
+    {
+      throw new IllegalArgumentException(
+          "The protagonist cannot clear any obstacle between minY and maxY");
+    }
+
+    this.minY = lowest;
+    this.maxY = highest;
+    this.minGap = Math.max(minGap, (windowEnd - windowStart) * timeStep);
+    this.maxGap = Math.max(maxGap, this.minGap);
+  }
+
+  /**
+   * Plays an obstacle at the given height from tick 0 against the protagonist and finds the window
+   * in which it needs the protagonist.
+   *
+   * @param y
+   *          initial y position of the obstacle
+   * @param column
+   *          bounds of every pose of the protagonist
+   * @param standing
+   *          bounds of the protagonist standing
+   * @param poses
+   *          bounds of the protagonist after each step of a jump
+   * @param passing
+   *          scratch list for the obstacle's bounds
+   * @param window
+   *          receives the first and the end tick of the window
+   * @return true if the protagonist can clear the obstacle
+   */
+  private boolean clears(int y, Rectangle2D column, Rectangle2D standing,
+      ArrayList<Rectangle2D> poses, ArrayList<Rectangle2D> passing, int[] window)
+  {
+    // bounds of the obstacle at every tick from the first to the last at which it is in the column
+    passing.clear();
+    int first = -1;
+    AbstractTerrainSprite obstacle = factory.create(0, y);
+    for (int m = 0; m < MAX_JUMP_TICKS && !obstacle.isRemovedAt(m * timeStep); m++)
+    {
+      obstacle.handleTick(m * timeStep);
+      Rectangle2D b = obstacle.isVisible() ? obstacle.getBounds2D() : null;
+      if (b != null && b.getMaxX() >= column.getMinX() && b.getMinX() <= column.getMaxX())
+      {
+        if (first < 0)
+        {
+          first = m;
+        }
+        while (passing.size() < m - first)
+        {
+          passing.add(null);
+        }
+        passing.add((Rectangle2D) b.clone());
+      }
+    }
+
+    if (first < 0)
+    {
+      window[0] = 0;
+      window[1] = 0;
+      return true;
+    }
+
+    // the protagonist steps at tick k against the obstacle as it was at tick k - 1
+    int from = first + 1;
+    int to = first + passing.size();
+    if (hits(NO_JUMP, from, to, first, passing, standing, poses) < 0)
+    {
+      window[0] = from;
+      window[1] = to + 1;
+      return true;
+    }
+
+    // the latest jump that clears the obstacle
+    for (int j = to; j > from - poses.size(); j--)
+    {
+      if (hits(j, from, to, first, passing, standing, poses) < 0)
+      {
+        window[0] = Math.min(j, from);
+        window[1] = Math.max(j + poses.size(), to + 1);
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the first tick from..to at which the protagonist, jumping at tick j, hits the obstacle.
+   *
+   * @return the tick, or -1 if there is none
+   */
+  private static int hits(int j, int from, int to, int first, ArrayList<Rectangle2D> passing,
+      Rectangle2D standing, ArrayList<Rectangle2D> poses)
+  {
+    for (int k = from; k <= to; k++)
+    {
+      Rectangle2D b = passing.get(k - 1 - first);
+      int i = k - j;
+      Rectangle2D pose = (j != NO_JUMP && i >= 0 && i < poses.size()) ? poses.get(i) : standing;
+      if (b != null && b.intersects(pose))
+      {
+        return k;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Plays consecutive jumps from the protagonist's initial state and collects the union of its
+   * bounds after each step of a jump. The protagonist's state is restored afterwards.
+   *
+   * @param protagonist
+   *          the protagonist
+   * @param poses
+   *          receives the bounds after each step of a jump, through the step on which it lands
+   * @return the union of the bounds of the protagonist standing, initially and after each landing
+   */
+  private Rectangle2D measureJump(AbstractProtagonistSprite protagonist,
+      ArrayList<Rectangle2D> poses)
+  {
+    double[] saved = protagonist.saveState();
+    protagonist.goToInitial();
+
+    Rectangle2D standing = (Rectangle2D) protagonist.getBounds2D().clone();
+    int tick = 0;
+    for (int n = 0; n < MEASURED_JUMPS; n++)
+    {
+      protagonist.jump();
+      int i = 0;
+      do
+      {
+        tick++;
+        protagonist.step(tick * timeStep);
+        Rectangle2D b = protagonist.getBounds2D();
+        if (i == poses.size())
+        {
+          poses.add((Rectangle2D) b.clone());
+        }
+        else
+        {
+          poses.get(i).add(b);
+        }
+        i++;
+      }
+      while (!protagonist.canJump() && i < MAX_JUMP_TICKS);
+      standing.add(protagonist.getBounds2D());
+    }
+
+    protagonist.restoreState(saved);
+    return standing;
+  }
+}
@@ -0,0 +1,169 @@
+package arcade.level;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-linear histogram of durations in nanoseconds. Every power of two is split into eight buckets,
+ * so percentiles are accurate to within 12.5%. Recording is a few atomic increments and never
+ * allocates, and the histogram may be read from any thread while it is being recorded into.
+ * 
+ * @author John Latino
+ *
+ */
+public class Histogram
+{
+  private static final int SUB_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BITS;
+  private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+  private AtomicLongArray counts;
+  private AtomicLong count, total, max;
+
+  /**
+   * Default constructor. Creates an empty histogram.
+   */
+  public Histogram()
+  {
+    counts = new AtomicLongArray(BUCKETS);
+    count = new AtomicLong();
+    total = new AtomicLong();
+    max = new AtomicLong();
+  }
+
+  /**
+   * Returns the number of recorded values.
+   * 
+   * @return number of values
+   */
+  public long getCount()
+  {
+    return count.get();
+  }
+
+  /**
+   * Returns the largest recorded value.
+   * 
+   * @return maximum in nanoseconds
+   */
+  public long getMax()
+  {
+    return max.get();
+  }
+
+  /**
+   * Returns the mean of the recorded values.
+   * 
+   * @return mean in nanoseconds, or 0 if nothing was recorded
+   */
+  public double getMean()
+  {
+    long n = count.get();
+    return (n == 0) ? 0 : (double) total.get() / n;
+  }
+
+  /**
+   * Returns the value below which the given percentage of the recorded values fall, rounded up to
+   * the end of its bucket.
+   * 
+   * @param percentile
+   *          percentile between 0 and 100
+   * @return the percentile in nanoseconds, or 0 if nothing was recorded
+   */
+  public long getPercentile(double percentile)
+  {
+    long n = count.get();
+    if (n == 0)
+    {
+      return 0;
+    }
+
+    long rank = Math.max(1, (long) Math.ceil(n * percentile / 100.0));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++)
+    {
+      seen += counts.get(i);
+      if (seen >= rank)
+      {
+        return Math.min(lowerBound(i + 1) - 1, max.get());
+      }
+    }
+    return max.get();
+  }
+
+  /**
+   * Records a value.
+   * 
+   * @param nanos
+   *          duration in nanoseconds
+   */
+  public void record(long nanos)
+  {
+    long value = Math.max(nanos, 0);
+    counts.incrementAndGet(bucket(value));
+    count.incrementAndGet();
+    total.addAndGet(value);
+
+    long m = max.get();
+    while (value > m && !max.compareAndSet(m, value))
+    {
+      m = max.get();
+    }
+  }
+
+  /**
+   * Removes all recorded values.
+   */
+  public void reset()
+  {
+    for (int i = 0; i < BUCKETS; i++)
+    {
+      counts.set(i, 0);
+    }
+    count.set(0);
+    total.set(0);
+    max.set(0);
+  }
+
+  /**
+   * Returns the bucket of a non-negative value.
+   * 
+   * @param value
+   *          the value
+   * @return bucket index
+   */
+  private static int bucket(long value)
+  {
+    if (value < SUB_BUCKETS)
+    {
+      return (int) value;
+    }
+
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+    return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+  }
+
+  /**
+   * Returns the smallest value that falls into the given bucket.
+   * 
+   * @param bucket
+   *          bucket index
+   * @return lower bound of the bucket
+   */
+  private static long lowerBound(int bucket)
+  {
+    if (bucket < SUB_BUCKETS)
+    {
+      return bucket;
+    }
+    if (bucket >= BUCKETS)
+    {
+      return Long.MAX_VALUE;
+    }
+
+    int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+    long sub = bucket % SUB_BUCKETS;
+    return (SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+  }
+}
@@ -0,0 +1,221 @@
+package arcade.level;
+
+import java.util.Arrays;
+
+/**
+ * Compact log of the ticks at which a protagonist jumped. Ticks are stored as the difference from
+ * the previous tick in a variable-length encoding of seven bits per byte, so a typical jump costs
+ * one or two bytes. A log recorded by a LevelStage can be replayed headlessly with
+ * LevelSimulation.run or visually with LevelStage.replay.
+ * 
+ * @author John Latino
+ *
+ */
+public class InputLog
+{
+  private byte[] bytes;
+  private int length;
+  private int size;
+  private int lastTick;
+
+  /**
+   * Constructs an empty InputLog.
+   */
+  public InputLog()
+  {
+    bytes = new byte[16];
+  }
+
+  /**
+   * Constructs an InputLog from the encoded form returned by toByteArray.
+   * 
+   * @param encoded
+   *          the encoded log
+   * @throws IllegalArgumentException
+   *           if the encoding is malformed
+   */
+  public InputLog(byte[] encoded) throws IllegalArgumentException
+  {
+    bytes = Arrays.copyOf(encoded, Math.max(16, encoded.length));
+    length = encoded.length;
+
+    int i = 0;
+    while (i < length)
+    {
+      long delta = 0;
+      int shift = 0;
+      byte b;
+      do
+      {
+        if (i >= length || shift > 28)
+        {
+          throw new IllegalArgumentException("Malformed input log at byte " + i);
+        }
+        b = bytes[i++];
+        delta |= (long) (b & 0x7F) << shift;
+        shift += 7;
+      }
+      while (b < 0);
+
+      if (lastTick + delta > Integer.MAX_VALUE)
+      {
+        throw new IllegalArgumentException("Malformed input log at byte " + i);
+      }
+      lastTick += (int) delta;
+      size++;
+    }
+  }
+
+  /**
+   * Appends a jump tick to the log.
+   * 
+   * @param tick
+   *          the tick, no earlier than the last tick in the log
+   * @throws IllegalArgumentException
+   *           if the tick is negative or earlier than the last tick in the log
+   */
+  public void add(int tick) throws IllegalArgumentException
+  {
+    if (tick < lastTick)
+    {
+      throw new IllegalArgumentException("Ticks must be added in ascending order");
+    }
+
+    if (length + 5 > bytes.length)
+    {
+      bytes = Arrays.copyOf(bytes, bytes.length * 2);
+    }
+
+    int delta = tick - lastTick;
+    while ((delta & ~0x7F) != 0)
+    {
+      bytes[length++] = (byte) ((delta & 0x7F) | 0x80);
+      delta >>>= 7;
+    }
+    bytes[length++] = (byte) delta;
+
+    lastTick = tick;
+    size++;
+  }
+
+  /**
+   * Removes every jump from the log.
+   */
+  public void clear()
+  {
+    length = 0;
+    size = 0;
+    lastTick = 0;
+  }
+
+  /**
+   * Returns the size of the encoded log.
+   * 
+   * @return number of bytes
+   */
+  public int getByteCount()
+  {
+    return length;
+  }
+
+  /**
+   * Returns the last tick in the log.
+   * 
+   * @return the last tick, or 0 if the log is empty
+   */
+  public int getLastTick()
+  {
+    return lastTick;
+  }
+
+  /**
+   * Decodes the ticks of the log.
+   * 
+   * @return ascending jump ticks
+   */
+  public int[] getTicks()
+  {
+    int[] ticks = new int[size];
+    int tick = 0;
+    int i = 0;
+    for (int n = 0; n < size; n++)
+    {
+      int delta = 0;
+      int shift = 0;
+      byte b;
+      do
+      {
+        b = bytes[i++];
+        delta |= (b & 0x7F) << shift;
+        shift += 7;
+      }
+      while (b < 0);
+
+      tick += delta;
+      ticks[n] = tick;
+    }
+    return ticks;
+  }
+
+  /**
+   * Returns the number of jumps in the log.
+   * 
+   * @return number of jumps
+   */
+  public int size()
+  {
+    return size;
+  }
+
+  /**
+   * Removes the jumps after the given tick, so that a run restarted from that tick can be recorded
+   * on.
+   * 
+   * @param tick
+   *          the last tick to keep
+   */
+  public void truncate(int tick)
+  {
+    int kept = 0;
+    int keptTick = 0;
+    int keptLength = 0;
+    int current = 0;
+    int i = 0;
+    for (int n = 0; n < size; n++)
+    {
+      int delta = 0;
+      int shift = 0;
+      byte b;
+      do
+      {
+        b = bytes[i++];
+        delta |= (b & 0x7F) << shift;
+        shift += 7;
+      }
+      while (b < 0);
+
+      current += delta;
+      if (current > tick)
+      {
+        break;
+      }
+      kept = n + 1;
+      keptTick = current;
+      keptLength = i;
+    }
+
+    length = keptLength;
+    size = kept;
+    lastTick = keptTick;
+  }
+
+  /**
+   * Returns the encoded log.
+   * 
+   * @return a copy of the encoded log
+   */
+  public byte[] toByteArray()
+  {
+    return Arrays.copyOf(bytes, length);
+  }
+}
@@ -2,10 +2,15 @@ package arcade.level;
 
 import java.util.AbstractCollection;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 import arcade.elements.AbstractTerrainSprite;
 import visual.dynamic.described.Sprite;
@@ -23,8 +28,36 @@ public class Level extends AbstractCollection<AbstractTerrainSprite>
 
   public static final int DEFAULT_LEVEL_END_OFFSET = 3000;
 
+  /**
+   * Returned by the checkpoint queries when there is no matching checkpoint.
+   */
+  public static final int NO_CHECKPOINT = -1;
+
+  /**
+   * Orders TerrainSprites by ascending start time. Sprites with equal start times keep their
+   * insertion order.
+   */
+  public static final Comparator<AbstractTerrainSprite> SPAWN_ORDER =
+      new Comparator<AbstractTerrainSprite>()
+  {
+    @Override
+    public int compare(AbstractTerrainSprite a, AbstractTerrainSprite b)
+    {
+      return Integer.compare(a.getStartTime(), b.getStartTime());
+    }
+  };
+
   private LinkedList<AbstractTerrainSprite> terrain;
-  private List<Integer> checkpoints;
+  private int[] checkpoints;
+  private int checkpointCount;
+  private ArrayList<AbstractTerrainSprite> spawnIndex;
+  private TerrainPool pool;
+
+  // metadata maintained as sprites are added; maxStartTime is rescanned only after the latest
+  // sprite is removed
+  private int maxStartTime;
+  private boolean maxStartTimeValid;
+  private HashMap<Class<?>, int[]> typeCounts;
 
   /**
    * Default constructor creates a new Level obejct with an empty terrain list.
@@ -59,21 +92,60 @@ public class Level extends AbstractCollection<AbstractTerrainSprite>
   public Level(List<AbstractTerrainSprite> inTerrain, List<Integer> inCheckpoints)
   {
     terrain = new LinkedList<AbstractTerrainSprite>();
-    checkpoints = new ArrayList<Integer>(inCheckpoints);
+    checkpoints = new int[Math.max(inCheckpoints.size(), 4)];
+    pool = new TerrainPool();
+    typeCounts = new HashMap<Class<?>, int[]>();
+    maxStartTimeValid = true;
+
+    for (Integer checkpoint : inCheckpoints)
+    {
+      addCheckpoint(checkpoint);
+    }
     addAll(inTerrain);
   }
 
+  /**
+   * Adds copies of the TerrainSprites in their initial state to the given collection, in spawn
+   * order. Copies come from the level's pool, so a level whose copies are regularly released
+   * allocates no new sprites. The pool keeps track of every copy until it is handed back with
+   * releaseSprites; callers that do not release their copies should use getInitialSprites.
+   * 
+   * @param copies
+   *          receives the copies
+   */
+  public void acquireInitialSprites(Collection<? super AbstractTerrainSprite> copies)
+  {
+    for (AbstractTerrainSprite s : getSpawnIndex())
+    {
+      copies.add(pool.acquire(s));
+    }
+  }
+
   /**
    * Adds a new TerrainSprite to the collection.
    */
   @Override
   public boolean add(AbstractTerrainSprite spriteToAdd)
   {
+    spawnIndex = null;
+    if (spriteToAdd.getStartTime() > maxStartTime)
+    {
+      maxStartTime = spriteToAdd.getStartTime();
+    }
+
+    int[] count = typeCounts.get(spriteToAdd.getClass());
+    if (count == null)
+    {
+      count = new int[1];
+      typeCounts.put(spriteToAdd.getClass(), count);
+    }
+    count[0]++;
+
     return terrain.add(spriteToAdd);
   }
 
   /**
-   * Adds a new checkpoint time to the checkpoint list.
+   * Adds a new checkpoint time to the checkpoint list. The list is kept sorted.
    * 
    * @param checkpointTime
    *          checkpoint to add
@@ -82,17 +154,114 @@ public class Level extends AbstractCollection<AbstractTerrainSprite>
    */
   public boolean addCheckpoint(Integer checkpointTime)
   {
-    return checkpoints.add(checkpointTime);
+    if (checkpointCount == checkpoints.length)
+    {
+      checkpoints = Arrays.copyOf(checkpoints, checkpointCount * 2);
+    }
+
+    int i = upperBound(checkpointTime);
+    System.arraycopy(checkpoints, i, checkpoints, i + 1, checkpointCount - i);
+    checkpoints[i] = checkpointTime;
+    checkpointCount++;
+    return true;
+  }
+
+  /**
+   * Returns the latest checkpoint at or before the given time.
+   * 
+   * @param time
+   *          the current time
+   * @return the checkpoint time, or NO_CHECKPOINT if no checkpoint has been reached
+   */
+  public int checkpointBefore(int time)
+  {
+    int i = upperBound(time);
+    return (i == 0) ? NO_CHECKPOINT : checkpoints[i - 1];
   }
 
   /**
-   * Returns the Iterator for the checkpoints list.
+   * Returns the Iterator for the checkpoints list, in ascending order.
    * 
    * @return checkpoints' iterator
    */
   public Iterator<Integer> checkpointIterator()
   {
-    return checkpoints.iterator();
+    return new Iterator<Integer>()
+    {
+      private int next;
+
+      @Override
+      public boolean hasNext()
+      {
+        return next < checkpointCount;
+      }
+
+      @Override
+      public Integer next()
+      {
+        if (next >= checkpointCount)
+        {
+          throw new NoSuchElementException();
+        }
+        return checkpoints[next++];
+      }
+
+      @Override
+      public void remove()
+      {
+        if (next == 0)
+        {
+          throw new IllegalStateException();
+        }
+        next--;
+        System.arraycopy(checkpoints, next + 1, checkpoints, next, checkpointCount - next - 1);
+        checkpointCount--;
+      }
+    };
+  }
+
+  /**
+   * Returns the number of checkpoints in the level.
+   * 
+   * @return number of checkpoints
+   */
+  public int getCheckpointCount()
+  {
+    return checkpointCount;
+  }
+
+  /**
+   * Returns a sorted copy of the checkpoint times.
+   * 
+   * @return checkpoint times in ascending order
+   */
+  public int[] getCheckpoints()
+  {
+    return Arrays.copyOf(checkpoints, checkpointCount);
+  }
+
+  /**
+   * Returns the number of TerrainSprites of exactly the given class in the level.
+   * 
+   * @param type
+   *          the sprite class
+   * @return number of sprites of that class
+   */
+  public int getCount(Class<? extends AbstractTerrainSprite> type)
+  {
+    int[] count = typeCounts.get(type);
+    return (count == null) ? 0 : count[0];
+  }
+
+  /**
+   * Compiles the level into an immutable CompiledLevel that any number of stages can play at once
+   * without copying it. Later changes to this level are not reflected in the compiled form.
+   * 
+   * @return the compiled level
+   */
+  public CompiledLevel freeze()
+  {
+    return new CompiledLevel(this);
   }
 
   /**
@@ -116,20 +285,13 @@ public class Level extends AbstractCollection<AbstractTerrainSprite>
    */
   public int getLevelEndTime(int offset)
   {
-    int end = 0;
-    for (AbstractTerrainSprite s : terrain)
-    {
-      if (s.getStartTime() > end)
-      {
-        end = s.getStartTime();
-      }
-    }
-    return end + offset;
+    return getMaxStartTime() + offset;
   }
 
   /**
    * Returns a List of cloned Sprites. Cloned sprites are equal to the original inTerrain sprites
-   * before any positional manipulation has occurred.
+   * before any positional manipulation has occurred. The clones are not pooled; use
+   * acquireInitialSprites for copies that are handed back.
    * 
    * @return List of cloned sprites.
    */
@@ -144,6 +306,44 @@ public class Level extends AbstractCollection<AbstractTerrainSprite>
     return origSprites;
   }
 
+  /**
+   * Returns the highest startTime owned by a TerrainSprite, or 0 for an empty level.
+   * 
+   * @return the latest start time
+   */
+  public int getMaxStartTime()
+  {
+    if (!maxStartTimeValid)
+    {
+      maxStartTime = 0;
+      for (AbstractTerrainSprite s : terrain)
+      {
+        if (s.getStartTime() > maxStartTime)
+        {
+          maxStartTime = s.getStartTime();
+        }
+      }
+      maxStartTimeValid = true;
+    }
+    return maxStartTime;
+  }
+
+  /**
+   * Returns the TerrainSprites ordered by ascending start time. The index is rebuilt lazily after
+   * the level is modified, so repeated calls on an unchanged level do not sort again.
+   * 
+   * @return read-only list of sprites in spawn order
+   */
+  public List<AbstractTerrainSprite> getSpawnIndex()
+  {
+    if (spawnIndex == null)
+    {
+      spawnIndex = new ArrayList<AbstractTerrainSprite>(terrain);
+      Collections.sort(spawnIndex, SPAWN_ORDER);
+    }
+    return Collections.unmodifiableList(spawnIndex);
+  }
+
   /**
    * Returns a List of the sprites in the terrain list. This list is copied to a new LinkedList and
    * returned as raw Sprites.
@@ -156,13 +356,81 @@ public class Level extends AbstractCollection<AbstractTerrainSprite>
     return sprites;
   }
 
+  /**
+   * Returns a new TerrainSource that plays its own copies of the level's terrain. Each LevelStage
+   * or LevelSimulation needs its own source; a discarded source is reclaimed with its copies.
+   * 
+   * @return a new terrain source
+   */
+  public CheckpointableTerrainSource newSource()
+  {
+    return new LevelTerrainSource(this);
+  }
+
+  /**
+   * Returns the earliest checkpoint after the given time.
+   * 
+   * @param time
+   *          the current time
+   * @return the checkpoint time, or NO_CHECKPOINT if there are no checkpoints left
+   */
+  public int nextCheckpointAfter(int time)
+  {
+    int i = upperBound(time);
+    return (i == checkpointCount) ? NO_CHECKPOINT : checkpoints[i];
+  }
+
+  /**
+   * Returns cloned sprites obtained from acquireInitialSprites to the level's pool. Sprites that
+   * did not come from the pool are ignored.
+   * 
+   * @param copies
+   *          the clones to release
+   */
+  public void releaseSprites(Collection<? extends Sprite> copies)
+  {
+    for (Sprite s : copies)
+    {
+      pool.release(s);
+    }
+  }
+
   /**
    * Returns the default iterator for the Terrain list.
    */
   @Override
   public Iterator<AbstractTerrainSprite> iterator()
   {
-    return terrain.iterator();
+    final Iterator<AbstractTerrainSprite> it = terrain.iterator();
+    return new Iterator<AbstractTerrainSprite>()
+    {
+      private AbstractTerrainSprite current;
+
+      @Override
+      public boolean hasNext()
+      {
+        return it.hasNext();
+      }
+
+      @Override
+      public AbstractTerrainSprite next()
+      {
+        current = it.next();
+        return current;
+      }
+
+      @Override
+      public void remove()
+      {
+        it.remove();
+        spawnIndex = null;
+        typeCounts.get(current.getClass())[0]--;
+        if (current.getStartTime() == maxStartTime)
+        {
+          maxStartTimeValid = false;
+        }
+      }
+    };
   }
 
   /**
@@ -173,4 +441,31 @@ public class Level extends AbstractCollection<AbstractTerrainSprite>
   {
     return terrain.size();
   }
+
+  /**
+   * Returns the number of checkpoints at or before the given time, which is also the index at
+   * which a checkpoint for that time is inserted.
+   * 
+   * @param time
+   *          the time to search for
+   * @return index of the first checkpoint after the time
+   */
+  private int upperBound(int time)
+  {
+    int low = 0;
+    int high = checkpointCount;
+    while (low < high)
+    {
+      int mid = (low + high) >>> 1;
+      if (checkpoints[mid] <= time)
+      {
+        low = mid + 1;
+      }
+      else
+      {
+        high = mid;
+      }
+    }
+    return low;
+  }
 }
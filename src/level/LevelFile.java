@@ -0,0 +1,134 @@
+package arcade.level;
+
+import java.io.File;
+import java.io.IOException;
+
+import arcade.elements.AbstractTerrainSprite;
+
+/**
+ * Compact, versioned binary level format. A level file is a 16 byte header followed by one column
+ * per attribute, so a loader can read any sprite's attributes without parsing the ones before it:
+ * 
+ * <pre>
+ * int    magic            "SRLV"
+ * int    version
+ * int    count            number of terrain sprites
+ * int    checkpointCount
+ * byte   typeId[count]    (padded to a multiple of 4 bytes)
+ * int    startTime[count] ascending
+ * double initialY[count]  (aligned to 8 bytes)
+ * int    checkpoint[checkpointCount] ascending
+ * </pre>
+ * 
+ * All values are big-endian. Type ids are resolved through a TerrainRegistry.
+ * 
+ * @author John Latino
+ *
+ */
+public class LevelFile
+{
+  public static final int MAGIC = 0x53524C56;
+  public static final int VERSION = 1;
+  public static final int HEADER_SIZE = 16;
+
+  /**
+   * Returns the file offset of the checkpoint column.
+   * 
+   * @param count
+   *          number of terrain sprites
+   * @return checkpoint column offset
+   */
+  static long checkpointOffset(int count)
+  {
+    return initialYOffset(count) + 8L * count;
+  }
+
+  /**
+   * Returns the file offset of the initial y column.
+   * 
+   * @param count
+   *          number of terrain sprites
+   * @return initial y column offset
+   */
+  static long initialYOffset(int count)
+  {
+    return align(startTimeOffset(count) + 4L * count, 8);
+  }
+
+  /**
+   * Maps a level file into memory. Sprites are materialized only as a stage reaches them.
+   * 
+   * @param file
+   *          the level file
+   * @param registry
+   *          registry resolving the type ids
+   * @return the mapped level
+   * @throws IOException
+   *           if the file cannot be read or is not a supported level file
+   */
+  public static MappedLevel map(File file, TerrainRegistry registry) throws IOException
+  {
+    return new MappedLevel(file, registry);
+  }
+
+  /**
+   * Returns the file offset of the start time column.
+   * 
+   * @param count
+   *          number of terrain sprites
+   * @return start time column offset
+   */
+  static long startTimeOffset(int count)
+  {
+    return align(HEADER_SIZE + (long) count, 4);
+  }
+
+  /**
+   * Writes a Level to a level file.
+   * 
+   * @param level
+   *          the level to write
+   * @param registry
+   *          registry providing the type ids
+   * @param file
+   *          the file to write
+   * @throws IOException
+   *           if the file cannot be written
+   * @throws IllegalArgumentException
+   *           if the level contains an unregistered terrain type
+   */
+  public static void write(Level level, TerrainRegistry registry, File file)
+      throws IOException, IllegalArgumentException
+  {
+    LevelFileWriter writer = new LevelFileWriter(file);
+    try
+    {
+      for (AbstractTerrainSprite s : level.getSpawnIndex())
+      {
+        writer.add(registry.getId(s.getClass()), s.getStartTime(), s.getInitialY());
+      }
+      for (int checkpoint : level.getCheckpoints())
+      {
+        writer.addCheckpoint(checkpoint);
+      }
+    }
+    finally
+    {
+      writer.close();
+    }
+  }
+
+  /**
+   * Rounds an offset up to a multiple of the given alignment.
+   * 
+   * @param offset
+   *          the offset
+   * @param alignment
+   *          the alignment
+   * @return the aligned offset
+   */
+  private static long align(long offset, int alignment)
+  {
+    return (offset + alignment - 1) / alignment * alignment;
+  }
+}
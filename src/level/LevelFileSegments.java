@@ -0,0 +1,42 @@
+package arcade.level;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * LevelSegments stored as one binary level file per segment, in playing order.
+ * 
+ * @author John Latino
+ *
+ */
+public class LevelFileSegments implements LevelSegments
+{
+  private File[] files;
+  private TerrainRegistry registry;
+
+  /**
+   * Constructs LevelFileSegments.
+   * 
+   * @param files
+   *          the segment files, in playing order
+   * @param registry
+   *          registry resolving the files' terrain type ids
+   */
+  public LevelFileSegments(File[] files, TerrainRegistry registry)
+  {
+    this.files = files.clone();
+    this.registry = registry;
+  }
+
+  @Override
+  public int getSegmentCount()
+  {
+    return files.length;
+  }
+
+  @Override
+  public TerrainSource loadSegment(int index) throws IOException
+  {
+    return LevelFile.map(files[index], registry).newSource();
+  }
+}
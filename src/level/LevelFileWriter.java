@@ -0,0 +1,189 @@
+package arcade.level;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Streams terrain records into a LevelFile. Records must be added in ascending start time order.
+ * The type column is written straight into the level file while the other columns are spooled to
+ * temporary files and appended on close, so arbitrarily large levels are written with constant
+ * memory.
+ * 
+ * @author John Latino
+ *
+ */
+public class LevelFileWriter implements Closeable
+{
+  private File file, startTimeFile, initialYFile;
+  private DataOutputStream types, startTimes, initialYs;
+  private int count, lastStartTime;
+  private int[] checkpoints;
+  private int checkpointCount;
+  private boolean closed;
+
+  /**
+   * Constructs a writer for the given file, replacing any existing file.
+   * 
+   * @param file
+   *          the level file to write
+   * @throws IOException
+   *           if the file or the temporary files cannot be created
+   */
+  public LevelFileWriter(File file) throws IOException
+  {
+    this.file = file;
+    startTimeFile = File.createTempFile("level", ".start");
+    initialYFile = File.createTempFile("level", ".y");
+
+    FileOutputStream out = new FileOutputStream(file);
+    out.write(new byte[LevelFile.HEADER_SIZE]);
+    types = new DataOutputStream(new BufferedOutputStream(out));
+    startTimes = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(startTimeFile)));
+    initialYs = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(initialYFile)));
+
+    checkpoints = new int[16];
+    lastStartTime = Integer.MIN_VALUE;
+  }
+
+  /**
+   * Adds a terrain record.
+   * 
+   * @param typeId
+   *          registered type id
+   * @param startTime
+   *          spawn time, no earlier than that of the previous record
+   * @param initialY
+   *          initial y position
+   * @throws IOException
+   *           if the record cannot be written
+   * @throws IllegalArgumentException
+   *           if the type id is out of range or the start time is earlier than the previous one
+   */
+  public void add(int typeId, int startTime, double initialY)
+      throws IOException, IllegalArgumentException
+  {
+    if (typeId < 0 || typeId >= TerrainRegistry.MAX_TYPES)
+    {
+      throw new IllegalArgumentException("Terrain type ids must be between 0 and "
+          + TerrainRegistry.MAX_TYPES);
+    }
+    if (startTime < lastStartTime)
+    {
+      throw new IllegalArgumentException("Start times must be in ascending order");
+    }
+
+    types.writeByte(typeId);
+    startTimes.writeInt(startTime);
+    initialYs.writeDouble(initialY);
+    lastStartTime = startTime;
+    count++;
+  }
+
+  /**
+   * Adds a checkpoint time. Checkpoints may be added in any order.
+   * 
+   * @param checkpointTime
+   *          checkpoint to add
+   */
+  public void addCheckpoint(int checkpointTime)
+  {
+    if (checkpointCount == checkpoints.length)
+    {
+      checkpoints = Arrays.copyOf(checkpoints, checkpointCount * 2);
+    }
+    checkpoints[checkpointCount++] = checkpointTime;
+  }
+
+  /**
+   * Assembles the level file: appends the spooled columns and the checkpoints and writes the
+   * header. The temporary files are deleted.
+   * 
+   * @throws IOException
+   *           if the file cannot be written
+   */
+  @Override
+  public void close() throws IOException
+  {
+    if (closed)
+    {
+      return;
+    }
+    closed = true;
+
+    types.close();
+    startTimes.close();
+    initialYs.close();
+
+    RandomAccessFile out = new RandomAccessFile(file, "rw");
+    try
+    {
+      append(out, startTimeFile, LevelFile.startTimeOffset(count));
+      append(out, initialYFile, LevelFile.initialYOffset(count));
+
+      Arrays.sort(checkpoints, 0, checkpointCount);
+      out.seek(LevelFile.checkpointOffset(count));
+      for (int i = 0; i < checkpointCount; i++)
+      {
+        out.writeInt(checkpoints[i]);
+      }
+
+      out.seek(0);
+      out.writeInt(LevelFile.MAGIC);
+      out.writeInt(LevelFile.VERSION);
+      out.writeInt(count);
+      out.writeInt(checkpointCount);
+    }
+    finally
+    {
+      out.close();
+      startTimeFile.delete();
+      initialYFile.delete();
+    }
+  }
+
+  /**
+   * Copies a spooled column into the level file at the given offset, padding the file up to the
+   * offset first.
+   * 
+   * @param out
+   *          the level file
+   * @param column
+   *          the spooled column
+   * @param offset
+   *          offset of the column in the level file
+   * @throws IOException
+   *           if the column cannot be copied
+   */
+  private void append(RandomAccessFile out, File column, long offset) throws IOException
+  {
+    if (out.length() < offset)
+    {
+      out.setLength(offset);
+    }
+
+    FileChannel channel = out.getChannel();
+    RandomAccessFile in = new RandomAccessFile(column, "r");
+    try
+    {
+      FileChannel source = in.getChannel();
+      long size = source.size();
+      long copied = 0;
+      while (copied < size)
+      {
+        copied += channel.transferFrom(source, offset + copied, size - copied);
+      }
+    }
+    finally
+    {
+      in.close();
+    }
+  }
+}
@@ -0,0 +1,41 @@
+package arcade.level;
+
+import java.io.IOException;
+
+/**
+ * Thrown when an imported level file is malformed or describes invalid terrain. The message starts
+ * with the line the problem was found on.
+ *
+ * @author John Latino
+ *
+ */
+public class LevelFormatException extends IOException
+{
+  private static final long serialVersionUID = 1L;
+
+  private int lineNumber;
+
+  /**
+   * Constructs a LevelFormatException.
+   *
+   * @param lineNumber
+   *          1-based line of the problem
+   * @param message
+   *          description of the problem
+   */
+  public LevelFormatException(int lineNumber, String message)
+  {
+    super("Line " + lineNumber + ": " + message);
+    this.lineNumber = lineNumber;
+  }
+
+  /**
+   * Returns the line the problem was found on.
+   *
+   * @return 1-based line number
+   */
+  public int getLineNumber()
+  {
+    return lineNumber;
+  }
+}
@@ -0,0 +1,891 @@
+package arcade.level;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Streaming importer for levels exported by designers as CSV or JSON. The input is read through a
+ * fixed-size buffer and parsed one record at a time, without building a document, and each record
+ * is handed straight to a Level or a LevelFileWriter. Importing into a LevelFileWriter therefore
+ * uses constant memory however large the export is. Terrain type names are mapped to the type ids
+ * of a TerrainRegistry. The first problem found stops the import with a LevelFormatException that
+ * carries its line number.
+ *
+ * CSV exports have one record per line: <code>type,startTime,y</code> for terrain and
+ * <code>checkpoint,time</code> for checkpoints. Fields may be quoted, blank lines and lines
+ * starting with # are ignored, and a first line starting with the field name "type" is treated as
+ * a header.
+ *
+ * JSON exports are either an array of records or an object whose "terrain" member is an array of
+ * records and whose optional "checkpoints" member is an array of times. Terrain records are
+ * objects with "type", "startTime" and "y" (or "initialY") members; checkpoint records are objects
+ * with a "checkpoint" member. Other members are ignored.
+ *
+ * @author John Latino
+ *
+ */
+public class LevelImporter
+{
+  /**
+   * Formats understood by the importer.
+   */
+  public enum Format
+  {
+    /** One record per line, comma separated. */
+    CSV,
+    /** Array of record objects, or an object holding one. */
+    JSON
+  }
+
+  private static final String CHECKPOINT = "checkpoint";
+
+  private TerrainRegistry registry;
+  private String[] names;
+  private int[] ids;
+  private int typeCount;
+
+  /**
+   * Constructs a LevelImporter that creates terrain with the given registry's factories.
+   *
+   * @param registry
+   *          registry of the terrain types
+   */
+  public LevelImporter(TerrainRegistry registry)
+  {
+    this.registry = registry;
+    names = new String[8];
+    ids = new int[8];
+  }
+
+  /**
+   * Maps a terrain type name used in exports to a registered type id.
+   *
+   * @param name
+   *          the type name
+   * @param typeId
+   *          id the type is registered under in the registry
+   * @throws IllegalArgumentException
+   *           if the name is reserved or already mapped, or the id is not registered
+   */
+  public void register(String name, int typeId) throws IllegalArgumentException
+  {
+    registry.getFactory(typeId);
+    if (name.equals(CHECKPOINT) || findType(name) >= 0)
+    {
+      throw new IllegalArgumentException("Terrain type name " + name + " is already in use");
+    }
+
+    if (typeCount == names.length)
+    {
+      names = Arrays.copyOf(names, typeCount * 2);
+      ids = Arrays.copyOf(ids, typeCount * 2);
+    }
+    names[typeCount] = name;
+    ids[typeCount] = typeId;
+    typeCount++;
+  }
+
+  /**
+   * Imports an export into a new Level.
+   *
+   * @param in
+   *          the export
+   * @param format
+   *          format of the export
+   * @return the imported level
+   * @throws IOException
+   *           if the export cannot be read
+   * @throws LevelFormatException
+   *           if the export is malformed
+   */
+  public Level importLevel(Reader in, Format format) throws IOException, LevelFormatException
+  {
+    final Level level = new Level();
+    parse(in, format, new Sink()
+    {
+      @Override
+      public void terrain(int typeId, int startTime, double initialY)
+      {
+        level.add(registry.getFactory(typeId).create(startTime, initialY));
+      }
+
+      @Override
+      public void checkpoint(int time)
+      {
+        level.addCheckpoint(time);
+      }
+    });
+    return level;
+  }
+
+  /**
+   * Imports an export into a LevelFileWriter, with constant memory. Terrain records must be in
+   * ascending start time order. The writer is not closed.
+   *
+   * @param in
+   *          the export
+   * @param format
+   *          format of the export
+   * @param out
+   *          the writer receiving the records
+   * @return number of terrain records imported
+   * @throws IOException
+   *           if the export cannot be read or the level file cannot be written
+   * @throws LevelFormatException
+   *           if the export is malformed or out of order
+   */
+  public int importLevel(Reader in, Format format, final LevelFileWriter out)
+      throws IOException, LevelFormatException
+  {
+    final int[] count = new int[1];
+    parse(in, format, new Sink()
+    {
+      @Override
+      public void terrain(int typeId, int startTime, double initialY) throws IOException
+      {
+        out.add(typeId, startTime, initialY);
+        count[0]++;
+      }
+
+      @Override
+      public void checkpoint(int time)
+      {
+        out.addCheckpoint(time);
+      }
+    });
+    return count[0];
+  }
+
+  /**
+   * Returns the index of the type with the given name, or -1.
+   */
+  private int findType(CharSequence name)
+  {
+    for (int i = 0; i < typeCount; i++)
+    {
+      if (names[i].contentEquals(name))
+      {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private void parse(Reader in, Format format, Sink sink) throws IOException
+  {
+    Scanner scanner = new Scanner(in);
+    if (format == Format.CSV)
+    {
+      new CsvParser(scanner, sink).parse();
+    }
+    else
+    {
+      new JsonParser(scanner, sink).parse();
+    }
+  }
+
+  /**
+   * Receives the records of an import.
+   */
+  private interface Sink
+  {
+    void terrain(int typeId, int startTime, double initialY) throws IOException;
+
+    void checkpoint(int time) throws IOException;
+  }
+
+  /**
+   * Character reader with its own buffer and a line counter.
+   */
+  private static class Scanner
+  {
+    private Reader in;
+    private char[] buffer = new char[65536];
+    private int position, limit;
+    private int line = 1;
+
+    private Scanner(Reader in)
+    {
+      this.in = in;
+    }
+
+    private int peek() throws IOException
+    {
+      if (position == limit)
+      {
+        limit = in.read(buffer, 0, buffer.length);
+        position = 0;
+        if (limit <= 0)
+        {
+          limit = 0;
+          return -1;
+        }
+      }
+      return buffer[position];
+    }
+
+    private int read() throws IOException
+    {
+      int c = peek();
+      if (c >= 0)
+      {
+        position++;
+        if (c == '\n')
+        {
+          line++;
+        }
+      }
+      return c;
+    }
+
+    private LevelFormatException error(String message)
+    {
+      return new LevelFormatException(line, message);
+    }
+  }
+
+  /**
+   * Parser state shared by both formats: the current record's fields and their conversion.
+   */
+  private abstract class Parser
+  {
+    protected Scanner scanner;
+    protected Sink sink;
+    protected StringBuilder token = new StringBuilder();
+
+    private Parser(Scanner scanner, Sink sink)
+    {
+      this.scanner = scanner;
+      this.sink = sink;
+    }
+
+    abstract void parse() throws IOException;
+
+    /**
+     * Hands a terrain record to the sink, resolving its type name.
+     */
+    protected void terrain(CharSequence type, int startTime, double initialY, int line)
+        throws IOException
+    {
+      int i = findType(type);
+      if (i < 0)
+      {
+        throw new LevelFormatException(line, "unknown terrain type \"" + type + "\"");
+      }
+
+      try
+      {
+        sink.terrain(ids[i], startTime, initialY);
+      }
+      catch (IllegalArgumentException e)
+      {
+        throw new LevelFormatException(line, e.getMessage());
+      }
+    }
+
+    protected void checkpoint(int time, int line) throws IOException
+    {
+      if (time < 0)
+      {
+        throw new LevelFormatException(line, "checkpoint times cannot be negative");
+      }
+      sink.checkpoint(time);
+    }
+
+    /**
+     * Parses the token as an int.
+     */
+    protected int toInt(CharSequence s, String field, int line) throws LevelFormatException
+    {
+      int length = s.length();
+      int i = (length > 0 && (s.charAt(0) == '-' || s.charAt(0) == '+')) ? 1 : 0;
+      if (i == length)
+      {
+        throw new LevelFormatException(line, field + " must be an integer");
+      }
+
+      long value = 0;
+      for (; i < length; i++)
+      {
+        char c = s.charAt(i);
+        if (c < '0' || c > '9' || value > Integer.MAX_VALUE)
+        {
+          throw new LevelFormatException(line, field + " must be an integer");
+        }
+        value = value * 10 + (c - '0');
+      }
+      value = (s.charAt(0) == '-') ? -value : value;
+      if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)
+      {
+        throw new LevelFormatException(line, field + " is out of range");
+      }
+      return (int) value;
+    }
+
+    /**
+     * Parses the token as a double. Plain decimals of up to 15 digits are converted without
+     * allocating; other forms go through Double.parseDouble.
+     */
+    protected double toDouble(CharSequence s, String field, int line) throws LevelFormatException
+    {
+      int length = s.length();
+      boolean negative = length > 0 && s.charAt(0) == '-';
+      int i = (length > 0 && (negative || s.charAt(0) == '+')) ? 1 : 0;
+
+      long mantissa = 0;
+      int digits = 0, fraction = -1;
+      boolean plain = i < length;
+      for (; i < length && plain; i++)
+      {
+        char c = s.charAt(i);
+        if (c >= '0' && c <= '9')
+        {
+          mantissa = mantissa * 10 + (c - '0');
+          digits++;
+          fraction = (fraction >= 0) ? fraction + 1 : -1;
+        }
+        else if (c == '.' && fraction < 0)
+        {
+          fraction = 0;
+        }
+        else
+        {
+          plain = false;
+        }
+      }
+
+      if (plain && digits > 0 && digits <= 15)
+      {
+        double value = mantissa;
+        if (fraction > 0)
+        {
+          value /= POWERS_OF_TEN[fraction];
+        }
+        return negative ? -value : value;
+      }
+
+      try
+      {
+        double value = Double.parseDouble(s.toString());
+        if (Double.isNaN(value) || Double.isInfinite(value))
+        {
+          throw new NumberFormatException();
+        }
+        return value;
+      }
+      catch (NumberFormatException e)
+      {
+        throw new LevelFormatException(line, field + " must be a number");
+      }
+    }
+  }
+
+  private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8,
+      1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15 };
+
+  /**
+   * Parser for the CSV format.
+   */
+  private class CsvParser extends Parser
+  {
+    private StringBuilder type = new StringBuilder();
+
+    private CsvParser(Scanner scanner, Sink sink)
+    {
+      super(scanner, sink);
+    }
+
+    @Override
+    void parse() throws IOException
+    {
+      boolean first = true;
+      while (scanner.peek() >= 0)
+      {
+        int line = scanner.line;
+        skipSpaces();
+        int c = scanner.peek();
+        if (c == '#' || c == '\n' || c == '\r' || c < 0)
+        {
+          skipLine();
+          continue;
+        }
+
+        int end = field(type);
+        if (first && type.toString().equalsIgnoreCase("type"))
+        {
+          // header
+          skipLine();
+          first = false;
+          continue;
+        }
+        first = false;
+
+        if (CHECKPOINT.contentEquals(type))
+        {
+          expectMore(end, "checkpoint time");
+          end = field(token);
+          int time = toInt(token, "checkpoint time", line);
+          expectEnd(end);
+          checkpoint(time, line);
+        }
+        else
+        {
+          expectMore(end, "start time");
+          end = field(token);
+          int startTime = toInt(token, "start time", line);
+          expectMore(end, "y position");
+          end = field(token);
+          double initialY = toDouble(token, "y position", line);
+          expectEnd(end);
+          terrain(type, startTime, initialY, line);
+        }
+      }
+    }
+
+    /**
+     * Reads one field into the builder, without surrounding spaces or quotes, and returns the
+     * character that ended it: a comma, a newline or -1 at the end of the input.
+     */
+    private int field(StringBuilder out) throws IOException
+    {
+      out.setLength(0);
+      skipSpaces();
+      int c = scanner.peek();
+      if (c == '"')
+      {
+        // a quoted field may span lines; report the line it starts on
+        int line = scanner.line;
+        scanner.read();
+        while (true)
+        {
+          c = scanner.read();
+          if (c < 0)
+          {
+            throw new LevelFormatException(line, "unterminated quoted field");
+          }
+          if (c == '"')
+          {
+            if (scanner.peek() != '"')
+            {
+              break;
+            }
+            scanner.read();
+          }
+          out.append((char) c);
+        }
+        skipSpaces();
+      }
+      else
+      {
+        while ((c = scanner.peek()) >= 0 && c != ',' && c != '\n' && c != '\r')
+        {
+          out.append((char) scanner.read());
+        }
+        int length = out.length();
+        while (length > 0 && out.charAt(length - 1) <= ' ')
+        {
+          length--;
+        }
+        out.setLength(length);
+      }
+
+      c = scanner.peek();
+      if (c == ',')
+      {
+        scanner.read();
+        return ',';
+      }
+      if (c == '\r')
+      {
+        scanner.read();
+        c = scanner.peek();
+      }
+      if (c == '\n')
+      {
+        scanner.read();
+        return '\n';
+      }
+      if (c < 0)
+      {
+        return -1;
+      }
+      throw scanner.error("unexpected character '" + (char) c + "' after quoted field");
+    }
+
+    private void expectMore(int end, String field) throws LevelFormatException
+    {
+      if (end != ',')
+      {
+        throw new LevelFormatException(end == '\n' ? scanner.line - 1 : scanner.line, "missing "
+            + field);
+      }
+    }
+
+    private void expectEnd(int end) throws LevelFormatException
+    {
+      if (end == ',')
+      {
+        throw scanner.error("too many fields");
+      }
+    }
+
+    private void skipSpaces() throws IOException
+    {
+      int c;
+      while ((c = scanner.peek()) == ' ' || c == '\t')
+      {
+        scanner.read();
+      }
+    }
+
+    private void skipLine() throws IOException
+    {
+      int c;
+      while ((c = scanner.read()) >= 0 && c != '\n')
+      {
+        // skip
+      }
+    }
+  }
+
+  /**
+   * Pull parser for the JSON format.
+   */
+  private class JsonParser extends Parser
+  {
+    private StringBuilder key = new StringBuilder();
+    private StringBuilder type = new StringBuilder();
+
+    private JsonParser(Scanner scanner, Sink sink)
+    {
+      super(scanner, sink);
+    }
+
+    @Override
+    void parse() throws IOException
+    {
+      int c = next();
+      if (c == '[')
+      {
+        records();
+      }
+      else if (c == '{')
+      {
+        scanner.read();
+        if (next() == '}')
+        {
+          scanner.read();
+        }
+        else
+        {
+          do
+          {
+            string(key);
+            expect(':');
+            if ("terrain".contentEquals(key) && next() == '[')
+            {
+              records();
+            }
+            else if ("checkpoints".contentEquals(key) && next() == '[')
+            {
+              checkpoints();
+            }
+            else
+            {
+              skipValue();
+            }
+          }
+          while (separator('}'));
+        }
+      }
+      else
+      {
+        throw scanner.error("expected an array or an object");
+      }
+
+      if (next() >= 0)
+      {
+        throw scanner.error("unexpected content after the level");
+      }
+    }
+
+    /**
+     * Parses an array of record objects.
+     */
+    private void records() throws IOException
+    {
+      expect('[');
+      if (next() == ']')
+      {
+        scanner.read();
+        return;
+      }
+
+      do
+      {
+        record();
+      }
+      while (separator(']'));
+    }
+
+    /**
+     * Parses one record object.
+     */
+    private void record() throws IOException
+    {
+      next();
+      int line = scanner.line;
+      boolean hasType = false, hasStart = false, hasY = false, hasCheckpoint = false;
+      int startTime = 0, checkpoint = 0;
+      double initialY = 0.0;
+
+      expect('{');
+      if (next() == '}')
+      {
+        scanner.read();
+        throw new LevelFormatException(line, "empty record");
+      }
+
+      do
+      {
+        string(key);
+        expect(':');
+        if ("type".contentEquals(key))
+        {
+          string(type);
+          hasType = true;
+        }
+        else if ("startTime".contentEquals(key))
+        {
+          number();
+          startTime = toInt(token, "startTime", scanner.line);
+          hasStart = true;
+        }
+        else if ("y".contentEquals(key) || "initialY".contentEquals(key))
+        {
+          number();
+          initialY = toDouble(token, "y", scanner.line);
+          hasY = true;
+        }
+        else if (CHECKPOINT.contentEquals(key))
+        {
+          number();
+          checkpoint = toInt(token, "checkpoint", scanner.line);
+          hasCheckpoint = true;
+        }
+        else
+        {
+          skipValue();
+        }
+      }
+      while (separator('}'));
+
+      if (hasCheckpoint && !hasType)
+      {
+        checkpoint(checkpoint, line);
+      }
+      else if (!hasType)
+      {
+        throw new LevelFormatException(line, "record has no type");
+      }
+      else if (!hasStart || !hasY)
+      {
+        throw new LevelFormatException(line, "record is missing " + (hasStart ? "y" : "startTime"));
+      }
+      else
+      {
+        terrain(type, startTime, initialY, line);
+      }
+    }
+
+    /**
+     * Parses an array of checkpoint times.
+     */
+    private void checkpoints() throws IOException
+    {
+      expect('[');
+      if (next() == ']')
+      {
+        scanner.read();
+        return;
+      }
+
+      do
+      {
+        next();
+        int line = scanner.line;
+        number();
+        checkpoint(toInt(token, "checkpoint", line), line);
+      }
+      while (separator(']'));
+    }
+
+    /**
+     * Reads a string into the builder, resolving escapes.
+     */
+    private void string(StringBuilder out) throws IOException
+    {
+      expect('"');
+      out.setLength(0);
+      while (true)
+      {
+        int c = scanner.read();
+        if (c < 0 || c == '\n')
+        {
+          throw scanner.error("unterminated string");
+        }
+        if (c == '"')
+        {
+          return;
+        }
+        if (c == '\\')
+        {
+          c = scanner.read();
+          switch (c)
+          {
+            case 'n':
+              c = '\n';
+              break;
+            case 't':
+              c = '\t';
+              break;
+            case 'r':
+              c = '\r';
+              break;
+            case 'b':
+              c = '\b';
+              break;
+            case 'f':
+              c = '\f';
+              break;
+            case 'u':
+              int code = 0;
+              for (int i = 0; i < 4; i++)
+              {
+                int digit = Character.digit(scanner.read(), 16);
+                if (digit < 0)
+                {
+                  throw scanner.error("invalid unicode escape");
+                }
+                code = code * 16 + digit;
+              }
+              c = code;
+              break;
+            case '"':
+            case '\\':
+            case '/':
+              break;
+            default:
+              throw scanner.error("invalid escape");
+          }
+        }
+        out.append((char) c);
+      }
+    }
+
+    /**
+     * Reads a number literal into the token.
+     */
+    private void number() throws IOException
+    {
+      next();
+      token.setLength(0);
+      int c;
+      while ((c = scanner.peek()) >= 0
+          && ((c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E'))
+      {
+        token.append((char) scanner.read());
+      }
+      if (token.length() == 0)
+      {
+        throw scanner.error("expected a number");
+      }
+    }
+
+    /**
+     * Skips any value, including nested objects and arrays.
+     */
+    private void skipValue() throws IOException
+    {
+      int c = next();
+      if (c == '"')
+      {
+        string(token);
+      }
+      else if (c == '{' || c == '[')
+      {
+        int close = (c == '{') ? '}' : ']';
+        scanner.read();
+        if (next() == close)
+        {
+          scanner.read();
+          return;
+        }
+        do
+        {
+          if (close == '}')
+          {
+            string(token);
+            expect(':');
+          }
+          skipValue();
+        }
+        while (separator(close));
+      }
+      else
+      {
+        token.setLength(0);
+        while ((c = scanner.peek()) >= 0 && c != ',' && c != '}' && c != ']' && c > ' ')
+        {
+          token.append((char) scanner.read());
+        }
+        if (token.length() == 0)
+        {
+          throw scanner.error("expected a value");
+        }
+      }
+    }
+
+    /**
+     * Consumes a comma, returning true, or the closing character, returning false.
+     */
+    private boolean separator(int close) throws IOException
+    {
+      int c = next();
+      if (c == ',')
+      {
+        scanner.read();
+        return true;
+      }
+      if (c == close)
+      {
+        scanner.read();
+        return false;
+      }
+      throw scanner.error("expected ',' or '" + (char) close + "'");
+    }
+
+    private void expect(int expected) throws IOException
+    {
+      if (next() != expected)
+      {
+        throw scanner.error("expected '" + (char) expected + "'");
+      }
+      scanner.read();
+    }
+
+    /**
+     * Skips whitespace and returns the next character without consuming it.
+     */
+    private int next() throws IOException
+    {
+      int c;
+      while ((c = scanner.peek()) >= 0 && c <= ' ')
+      {
+        scanner.read();
+      }
+      return c;
+    }
+  }
+}
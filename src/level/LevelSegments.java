@@ -0,0 +1,33 @@
+package arcade.level;
+
+import java.io.IOException;
+
+/**
+ * A level stored as a sequence of time-ranged segments. Segment i holds the terrain whose start
+ * times lie between those of segment i - 1 and segment i + 1, so that playing the segments one
+ * after another plays the level in ascending start time order. Segments are loaded on demand by a
+ * StreamingTerrainSource, possibly on a background thread.
+ * 
+ * @author John Latino
+ *
+ */
+public interface LevelSegments
+{
+  /**
+   * Returns the number of segments in the level.
+   * 
+   * @return number of segments
+   */
+  public int getSegmentCount();
+
+  /**
+   * Loads a segment. Each call returns a new source positioned at the start of the segment.
+   * 
+   * @param index
+   *          segment index, from 0 to getSegmentCount() - 1
+   * @return source of the segment's terrain
+   * @throws IOException
+   *           if the segment cannot be read
+   */
+  public TerrainSource loadSegment(int index) throws IOException;
+}
@@ -0,0 +1,230 @@
+package arcade.level;
+
+import java.security.InvalidParameterException;
+import java.util.List;
+
+import arcade.elements.AbstractProtagonistSprite;
+import arcade.elements.AbstractTerrainSprite;
+import visual.dynamic.described.Sprite;
+
+/**
+ * Headless, deterministic simulation of a Level. Terrain spawning, keyframe advancement, the
+ * protagonist's step and collision detection run in a fixed-step loop without a Stage, a view
+ * or a metronome thread, so a level can be played far faster than real time. Given the same jump
+ * schedule a simulation always produces the same result. Each tick runs the same LevelTicker
+ * routine as a LevelStage, so the protagonist moves and collides exactly as it would on screen.
+ * 
+ * @author John Latino
+ *
+ */
+public class LevelSimulation
+{
+  private AbstractProtagonistSprite protagonist;
+  private Level level;
+  private int timeStep, tick;
+  private TerrainSpawner spawner;
+  private LevelTicker ticker;
+  private Sprite collision;
+
+  /**
+   * Constructs a simulation of the given Level played by the given protagonist.
+   * 
+   * @param inLevel
+   *          Level to simulate
+   * @param protagonist
+   *          protagonist of the level
+   * @param timeStep
+   *          milliseconds of simulated time per tick
+   * @throws InvalidParameterException
+   *           if the protagonist parameter is null, or if the timeStep is not positive.
+   */
+  public LevelSimulation(Level inLevel, AbstractProtagonistSprite protagonist, int timeStep)
+      throws InvalidParameterException
+  {
+    if (protagonist == null)
+    {
+      throw new InvalidParameterException("Protagonist parameter cannot be null");
+    }
+
+    if (timeStep <= 0)
+    {
+      throw new InvalidParameterException("Time step must be a positive value");
+    }
+
+    this.level = inLevel;
+    this.protagonist = protagonist;
+    this.timeStep = timeStep;
+
+    spawner = new TerrainSpawner(inLevel.newSource(), timeStep);
+    ticker = new LevelTicker(spawner, protagonist);
+  }
+
+  /**
+   * Returns the terrain sprite the protagonist collided with during the last tick.
+   * 
+   * @return the colliding sprite, or null
+   */
+  public Sprite getCollision()
+  {
+    return collision;
+  }
+
+  /**
+   * Returns the time at which a run ends in victory: the protagonist's victory time if one is set,
+   * otherwise the level end time.
+   * 
+   * @return the victory time
+   */
+  public int getEndTime()
+  {
+    return (protagonist.getVictoryTime() > 0) ? protagonist.getVictoryTime()
+        : level.getLevelEndTime();
+  }
+
+  /**
+   * Returns the Level being simulated.
+   * 
+   * @return the level
+   */
+  public Level getLevel()
+  {
+    return level;
+  }
+
+  /**
+   * Returns the protagonist being simulated.
+   * 
+   * @return the protagonist
+   */
+  public AbstractProtagonistSprite getProtagonist()
+  {
+    return protagonist;
+  }
+
+  /**
+   * Returns the active terrain sprites, in spawn order.
+   * 
+   * @return the active terrain
+   */
+  public List<AbstractTerrainSprite> getActiveTerrain()
+  {
+    return spawner.getActive();
+  }
+
+  /**
+   * Returns the number of ticks simulated since the last reset.
+   * 
+   * @return current tick
+   */
+  public int getTick()
+  {
+    return tick;
+  }
+
+  /**
+   * Returns the simulated time of the current tick.
+   * 
+   * @return current time in milliseconds
+   */
+  public int getTime()
+  {
+    return tick * timeStep;
+  }
+
+  /**
+   * Returns the number of milliseconds of simulated time per tick.
+   * 
+   * @return time step
+   */
+  public int getTimeStep()
+  {
+    return timeStep;
+  }
+
+  /**
+   * Resets the terrain and the protagonist to their initial states and the clock to tick 0.
+   */
+  public void reset()
+  {
+    ticker.detachTerrain();
+
+    protagonist.goToInitial();
+    protagonist.resetPhysicsClock(0);
+    protagonist.setVisible(true);
+    spawner.rewind();
+
+    tick = 0;
+    collision = null;
+  }
+
+  /**
+   * Resets the simulation and replays a recorded run, at full speed and without rendering.
+   * 
+   * @param log
+   *          jumps recorded by LevelStage.startRecording
+   * @return the outcome of the run
+   */
+  public SimulationResult run(InputLog log)
+  {
+    return run(log.getTicks());
+  }
+
+  /**
+   * Resets the simulation and plays it until the protagonist collides with terrain or the end
+   * time is reached. The protagonist jumps at every tick in the schedule at which a jump is legal,
+   * just as it would for a key press.
+   * 
+   * @param jumpTicks
+   *          ascending ticks at which the jump input is given
+   * @return the outcome of the run
+   */
+  public SimulationResult run(int[] jumpTicks)
+  {
+    reset();
+
+    int endTime = getEndTime();
+    int next = 0;
+    while (getTime() < endTime)
+    {
+      while (next < jumpTicks.length && jumpTicks[next] <= tick)
+      {
+        next++;
+      }
+
+      boolean jump = next < jumpTicks.length && jumpTicks[next] == tick + 1;
+      if (!step(jump))
+      {
+        break;
+      }
+    }
+
+    return new SimulationResult(tick, getTime(), collision);
+  }
+
+  /**
+   * Advances the simulation by one tick, as a LevelStage would: attaches terrain about to start,
+   * applies the jump input, ticks the protagonist and tests it for a collision against the terrain
+   * as it was at the end of the previous tick, then moves the terrain to the new time and detaches
+   * expired terrain.
+   * 
+   * @param jump
+   *          true if the jump input is given this tick
+   * @return true if the protagonist did not collide with any terrain
+   */
+  public boolean step(boolean jump)
+  {
+    tick++;
+    int time = getTime();
+
+    ticker.beginTick(time);
+    if (jump)
+    {
+      protagonist.requestJump();
+    }
+    protagonist.handleTick(time);
+    collision = protagonist.getCollision();
+    ticker.endTick(time);
+
+    return collision == null;
+  }
+}
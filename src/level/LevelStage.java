@@ -1,9 +1,15 @@
 package arcade.level;
 
+import java.lang.management.ManagementFactory;
 import java.security.InvalidParameterException;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 import arcade.elements.AbstractProtagonistSprite;
-import visual.dynamic.described.Sprite;
+import arcade.elements.JumpListener;
+import visual.VisualizationRenderer;
 import visual.dynamic.described.Stage;
 
 /**
@@ -14,10 +20,38 @@ import visual.dynamic.described.Stage;
  */
 public class LevelStage
 {
+  /**
+   * Default number of pixels around the view within which terrain is painted and collision-tested.
+   */
+  public static final int DEFAULT_CULL_MARGIN = 50;
+
+  /**
+   * Default number of active track-backed terrain sprites from which a parallel update is used.
+   */
+  public static final int DEFAULT_PARALLEL_THRESHOLD = 2048;
+
+  // Wall clock time between two ticks beyond which the game treats the gap as a pause
+  private static final long MAX_FRAME_NANOS = 250000000L;
 
   private AbstractProtagonistSprite protagonist;
   private Level level;
   private Stage stage;
+  private TerrainSpawner spawner;
+  private LevelTicker ticker;
+  private LevelStageMetrics metrics;
+  private VisualizationRenderer renderer;
+  private ScrollingRenderer scrolling;
+  private int timeStep;
+  private int physicsStep;
+  private int gameTime, lockstepTime;
+  private long gameNanos, lastNanos;
+  private boolean replaying;
+  private volatile StageHost host;
+  private int hostedTime;
+  private InputLog recording;
+  private int[] checkpoints;
+  private int nextCheckpoint;
+  private StageSnapshot snapshot;
 
   /**
    * Constructs a LevelStage with the specified Level terrain, visualized at the given width and
@@ -39,8 +73,65 @@ public class LevelStage
    */
   public LevelStage(Level inLevel, AbstractProtagonistSprite protagonist, int width, int height,
       int timeStep) throws InvalidParameterException
+  {
+    this(inLevel, (inLevel == null) ? null : inLevel.newSource(), protagonist, width, height,
+        timeStep);
+  }
+
+  /**
+   * Constructs a LevelStage whose terrain is supplied by the given TerrainSource, visualized at the
+   * given width and height. Use this constructor for levels that are not held in memory as a Level,
+   * such as mapped level files. Checkpoints are taken from a CheckpointableTerrainSource, such as
+   * the sources of a CompiledLevel or a MappedLevel; other sources have none.
+   * 
+   * @param source
+   *          source of the level terrain
+   * @param protagonist
+   *          protagonist of the level
+   * @param width
+   *          visualization width
+   * @param height
+   *          visualization height
+   * @param timeStep
+   *          metronome time step
+   * @throws InvalidParameterException
+   *           if the source or protagonist parameter is null, if the height or width are too low,
+   *           or if the timeStep is negative.
+   */
+  public LevelStage(TerrainSource source, AbstractProtagonistSprite protagonist, int width,
+      int height, int timeStep) throws InvalidParameterException
+  {
+    this(null, source, protagonist, width, height, timeStep);
+  }
+
+  /**
+   * Constructs a LevelStage that plays the given source.
+   * 
+   * @param inLevel
+   *          Level the source belongs to, or null
+   * @param source
+   *          source of the level terrain
+   * @param protagonist
+   *          protagonist of the level
+   * @param width
+   *          visualization width
+   * @param height
+   *          visualization height
+   * @param timeStep
+   *          metronome time step
+   * @throws InvalidParameterException
+   *           if the source or protagonist parameter is null, if the height or width are too low,
+   *           or if the timeStep is negative.
+   */
+  private LevelStage(Level inLevel, TerrainSource source, AbstractProtagonistSprite protagonist,
+      int width, int height, int timeStep) throws InvalidParameterException
   {
     // Sanity checks
+    if (source == null)
+    {
+      throw new InvalidParameterException("Level parameter cannot be null");
+    }
+
     if (protagonist == null)
     {
       throw new InvalidParameterException("Protagonist parameter cannot be null");
@@ -57,7 +148,8 @@ public class LevelStage
     }
 
     level = inLevel;
-    stage = new Stage(timeStep);
+    this.timeStep = timeStep;
+    stage = new ArcadeStage(this, timeStep);
     stage.getView().setBounds(0, 0, width, height);
 
     this.protagonist = protagonist;
@@ -66,12 +158,179 @@ public class LevelStage
     stage.add(protagonist);
     stage.addKeyListener(protagonist);
 
-    // Add all antagonists to the protagonist and the Stage
-    for (Sprite s : inLevel)
+    // Terrain is attached lazily, one time step before each sprite's start time, and only terrain
+    // within the view is on the stage and tested for collisions
+    spawner = new TerrainSpawner(source, timeStep);
+    ticker = new LevelTicker(spawner, protagonist, stage);
+
+    // Snapshots need a source that knows its checkpoints and can seek back to them
+    checkpoints = getCheckpoints(source);
+    snapshot = new StageSnapshot();
+
+    // Only checkpointable sources know the size of their level; streamed and generated terrain
+    // is counted as unknown
+    metrics = new LevelStageMetrics((source instanceof CheckpointableTerrainSource)
+        ? ((CheckpointableTerrainSource) source).size() : -1);
+    metrics.setInputQueue(protagonist.getInputQueue());
+    renderer = stage.getView().getRenderer();
+    stage.getView().setRenderer(new TimedRenderer(renderer, metrics));
+  }
+
+  /**
+   * Runs one tick of a hosted stage at the next multiple of its time step.
+   */
+  synchronized void advance()
+  {
+    hostedTime += timeStep;
+    stage.handleTick(hostedTime);
+  }
+
+  /**
+   * Returns the game time of a tick. Without a fixed physics step this is the metronome time. With
+   * one, the game time follows the wall clock, so that late or skipped ticks do not slow the game
+   * down; gaps longer than a quarter of a second are treated as pauses.
+   * 
+   * @param metronomeTime
+   *          the current metronome time
+   * @return the game time
+   */
+  int toGameTime(int metronomeTime)
+  {
+    if (physicsStep <= 0)
+    {
+      gameTime = metronomeTime;
+      return gameTime;
+    }
+
+    long now = System.nanoTime();
+    long elapsed = (lastNanos == 0) ? timeStep * 1000000L : now - lastNanos;
+    gameNanos += Math.min(elapsed, MAX_FRAME_NANOS);
+    lastNanos = now;
+    gameTime = (int) (gameNanos / 1000000L);
+    return gameTime;
+  }
+
+  /**
+   * Starts a tick: makes the terrain sprites whose start time is about to be reached active. They
+   * are attached to the protagonist and the stage once they are within the view.
+   * 
+   * @param time
+   *          the current metronome time
+   */
+  void beginTick(int time)
+  {
+    metrics.tickStarted(protagonist.getCollisionChecks());
+    ticker.beginTick(time);
+  }
+
+  /**
+   * Ends a tick: moves the terrain and updates which of it is within the view, as LevelTicker does
+   * for every level, then captures a snapshot if a checkpoint has been passed and records the
+   * tick's metrics.
+   * 
+   * @param time
+   *          the current metronome time
+   */
+  void endTick(int time)
+  {
+    ticker.endTick(time);
+
+    if (nextCheckpoint < checkpoints.length && time >= checkpoints[nextCheckpoint])
     {
-      stage.add(s);
-      protagonist.addAntagonist(s);
+      snapshot.capture(time, spawner.getFirstPosition(), spawner.getPosition(),
+          protagonist.saveState(), protagonist.getStepCount());
+      while (nextCheckpoint < checkpoints.length && time >= checkpoints[nextCheckpoint])
+      {
+        nextCheckpoint++;
+      }
     }
+
+    metrics.tickFinished(spawner.getActive().size(), protagonist.getCollisionChecks());
+  }
+
+  /**
+   * Returns the number of terrain sprites currently attached to the stage.
+   * 
+   * @return number of active terrain sprites
+   */
+  public int getActiveTerrainCount()
+  {
+    return spawner.getActive().size();
+  }
+
+  /**
+   * Returns the number of pixels around the view within which terrain is painted and
+   * collision-tested.
+   * 
+   * @return the cull margin
+   */
+  public int getCullMargin()
+  {
+    return ticker.getCullMargin();
+  }
+
+  /**
+   * Returns the StageHost ticking this LevelStage.
+   * 
+   * @return the host, or null if the stage runs on its own metronome
+   */
+  public StageHost getHost()
+  {
+    return host;
+  }
+
+  /**
+   * Returns the per-tick metrics of this LevelStage.
+   * 
+   * @return the metrics
+   */
+  public LevelStageMetrics getMetrics()
+  {
+    return metrics;
+  }
+
+  /**
+   * Returns the number of active track-backed terrain sprites from which the terrain is updated in
+   * parallel.
+   * 
+   * @return the parallel threshold
+   */
+  public int getParallelThreshold()
+  {
+    return ticker.getParallelThreshold();
+  }
+
+  /**
+   * Returns the pool the terrain is updated on when there is enough of it.
+   * 
+   * @return the pool, or null if the terrain is always updated on the tick thread
+   */
+  public ForkJoinPool getParallelUpdate()
+  {
+    return ticker.getParallelUpdate();
+  }
+
+  /**
+   * Returns the physics step at which ticks are played in lockstep with the protagonist: while a
+   * run with a fixed physics step is recorded or replayed, every physics step is played as a tick
+   * of its own, at a multiple of the step, so that the terrain moves between steps exactly as in a
+   * LevelSimulation with that time step and the run can be reproduced.
+   * 
+   * @return the physics step, or 0 if ticks are not played in lockstep
+   */
+  int getLockstep()
+  {
+    return (physicsStep > 0 && (recording != null || replaying)) ? physicsStep : 0;
+  }
+
+  /**
+   * Returns the time of the last tick played in lockstep.
+   * 
+   * @return the lockstep time
+   */
+  int getLockstepTime()
+  {
+    return lockstepTime;
   }
 
   /**
@@ -97,7 +356,8 @@ public class LevelStage
   /**
    * Returns the Level being managed by this LevelStage.
    * 
-   * @return the decorated level
+   * @return the decorated level, or null if the stage plays a TerrainSource that is not backed by
+   *         a Level
    */
   public Level getLevel()
   {
@@ -114,6 +374,27 @@ public class LevelStage
     return stage;
   }
 
+  /**
+   * Returns the time step of the stage's ticks.
+   * 
+   * @return time step
+   */
+  public int getTimeStep()
+  {
+    return timeStep;
+  }
+
+  /**
+   * Returns the number of active terrain sprites that are within the view and its margin, and are
+   * therefore painted and collision-tested.
+   * 
+   * @return number of visible terrain sprites
+   */
+  public int getVisibleTerrainCount()
+  {
+    return ticker.getVisibleCount();
+  }
+
   /**
    * Returns the width if the decorated stage's visualization view.
    * 
@@ -124,13 +405,23 @@ public class LevelStage
     return stage.getView().getWidth();
   }
 
+  /**
+   * Returns whether the stage is painted with scrolling dirty-region rendering.
+   * 
+   * @return true if scrolling rendering is enabled
+   */
+  public boolean isScrollingRendering()
+  {
+    return scrolling != null;
+  }
+
   /**
    * Effectively removes the protagonist's and the Stage's visibility from the view. Stops the
    * current stage, and sets the stage's and the protagonist's visibility to false.
    */
   public void killProtagonist()
   {
-    stage.stop();
+    stopTicks();
     stage.getView().setVisible(false);
     protagonist.setVisible(false);
   }
@@ -140,58 +431,142 @@ public class LevelStage
    */
   public void pause()
   {
-    stage.getMetronome().stop();
+    stopTicks();
+    lastNanos = 0;
     stage.getView().setVisible(false);
     stage.getView().setFocusable(false);
   }
 
   /**
-   * Resets the stage (all level terrain) and protagonist to their initial states.
+   * Registers this LevelStage's metrics with the platform MBean server under the name
+   * arcade.level:type=LevelStage,name=&lt;name&gt;.
+   * 
+   * @param name
+   *          name distinguishing this LevelStage
+   * @return the registered object name
+   * @throws JMException
+   *           if the name is invalid or already registered
    */
-  public void restart()
+  public ObjectName registerMBean(String name) throws JMException
   {
-    stage.stop();
+    ObjectName objectName = new ObjectName("arcade.level:type=LevelStage,name="
+        + ObjectName.quote(name));
+    ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, objectName);
+    return objectName;
+  }
+
+  /**
+   * Resets the stage (all level terrain) and protagonist to their initial states. A recording
+   * starts over and a replay plays from the start again.
+   */
+  public synchronized void restart()
+  {
+    stopTicks();
     stage.getMetronome().setTime(0);
+    hostedTime = 0;
+    gameTime = 0;
+    lockstepTime = 0;
+    gameNanos = 0;
+    lastNanos = 0;
+    checkpoints = getCheckpoints(spawner.getSource());
+    nextCheckpoint = 0;
+    snapshot.clear();
+    if (recording != null)
+    {
+      recording.clear();
+    }
 
-    // Remove all terrain sprites from the stage
-    for (Sprite s : level)
+    // Remove all active terrain sprites from the stage
+    ticker.detachTerrain();
+
+    // Reset the protagonist and the terrain in place rather than regenerating them, and spawn
+    // the terrain again as the metronome reaches it
+    protagonist.goToInitial();
+    protagonist.resetPhysicsClock(0);
+    protagonist.setVisible(true);
+    spawner.rewind();
+
+    // reset the stage for viewing
+    stage.getView().setVisible(true);
+    stage.getView().setFocusable(true);
+
+    if (scrolling != null)
     {
-      s.setLocation(-100, -100); // sets terrain's location to be unreachable
-      stage.remove(s);
-      protagonist.removeAntagonist(s);
+      scrolling.invalidate();
     }
+    stage.repaint();
+    startTicks();
+  }
 
-    // Remove the protagonist from the stage
-    stage.removeKeyListener(protagonist);
-    stage.remove(protagonist);
+  /**
+   * Restarts the stage and plays back a recorded run: the protagonist jumps at the logged physics
+   * steps and ignores key input until stopReplay is called. With a fixed physics step, the replay
+   * is played in lockstep, as the recording was.
+   * 
+   * @param log
+   *          the recorded jumps
+   */
+  public void replay(InputLog log)
+  {
+    replaying = true;
+    protagonist.setJumpSchedule(log.getTicks());
+    restart();
+  }
 
-    // create new protagonist
-    int winTime = protagonist.getVictoryTime();
+  /**
+   * Restarts the stage from the snapshot taken at the last checkpoint passed, or from the start of
+   * the level if no checkpoint has been passed since the last full restart. The protagonist's
+   * state, its physics step count, the active terrain and the game time are put back as they were
+   * at the checkpoint, without replaying or copying the level. A recording drops the jumps made
+   * after the checkpoint and a replay resumes from it, so both still describe one run from the
+   * start of the level. Stages whose source is not a CheckpointableTerrainSource always restart
+   * from the start.
+   */
+  public synchronized void restartFromCheckpoint()
+  {
+    if (!snapshot.isCaptured())
+    {
+      restart();
+      return;
+    }
 
-    AbstractProtagonistSprite newProtagonist = protagonist.regenerate();
-    protagonist = null;
-    protagonist = newProtagonist;
-    protagonist.setVictoryTime(winTime);
+    stopTicks();
+    int time = snapshot.getTime();
+    stage.getMetronome().setTime(time);
+    hostedTime = time;
+    gameTime = time;
+    lockstepTime = time;
+    gameNanos = time * 1000000L;
+    lastNanos = 0;
 
-    // Re-add the new protagonist to the stage
-    stage.add(protagonist);
-    stage.addKeyListener(protagonist);
+    // Pull the terrain that was active at the checkpoint from the source again, positioned at
+    // the checkpoint time
+    ticker.detachTerrain();
+    ticker.restore(time, snapshot.getFirst(), snapshot.getCursor());
 
-    // Add the original (deep copy) terrain sprites to the protagonist and the stage
-    Sprite tmp;
-    for (Sprite s : level.getInitialSprites())
+    protagonist.restoreState(snapshot.getProtagonistState());
+    protagonist.resetPhysicsClock(time, snapshot.getSteps());
+    if (recording != null)
     {
-      tmp = s;
-      protagonist.addAntagonist(tmp);
-      stage.add(tmp);
+      recording.truncate(snapshot.getSteps());
+    }
+    protagonist.setVisible(true);
+
+    nextCheckpoint = 0;
+    while (nextCheckpoint < checkpoints.length && time >= checkpoints[nextCheckpoint])
+    {
+      nextCheckpoint++;
     }
 
-    // reset the stage for viewing
     stage.getView().setVisible(true);
     stage.getView().setFocusable(true);
 
+    if (scrolling != null)
+    {
+      scrolling.invalidate();
+    }
     stage.repaint();
-    stage.start();
+    startTicks();
   }
 
   /**
@@ -201,7 +576,40 @@ public class LevelStage
   {
     stage.getView().setVisible(true);
     stage.getView().setFocusable(true);
-    stage.getMetronome().start();
+    startTicks();
+  }
+
+  /**
+   * Sets the number of active track-backed terrain sprites from which the terrain is updated in
+   * parallel. Below it, splitting the work costs more than it saves.
+   * 
+   * @param threshold
+   *          the parallel threshold
+   * @throws IllegalArgumentException
+   *           if threshold is not positive
+   */
+  public void setParallelThreshold(int threshold) throws IllegalArgumentException
+  {
+    if (threshold <= 0)
+    {
+      throw new IllegalArgumentException("The parallel threshold must be positive");
+    }
+    ticker.setParallelThreshold(threshold);
+  }
+
+  /**
+   * Updates the track-backed terrain on the given pool whenever at least the parallel threshold of
+   * it is active. The sprites are split into ranges that are moved concurrently, and the tick
+   * waits for all of them before terrain is culled, collision-tested or painted. Every sprite is
+   * computed exactly as in a sequential update, so the game plays identically either way. Terrain
+   * that owns its key frames is still ticked by the stage on the tick thread.
+   * 
+   * @param pool
+   *          the pool, or null to update the terrain on the tick thread
+   */
+  public void setParallelUpdate(ForkJoinPool pool)
+  {
+    ticker.setParallelUpdate(pool);
   }
 
   /**
@@ -220,6 +628,186 @@ public class LevelStage
       throw new InvalidParameterException("Protagonist cannot be null");
     }
     protagonist = newProtagonist;
+    ticker.setProtagonist(newProtagonist);
+    metrics.setInputQueue(protagonist.getInputQueue());
+    if (physicsStep > 0)
+    {
+      protagonist.setPhysicsStep(physicsStep);
+    }
+  }
+
+  /**
+   * Sets the number of pixels around the view within which terrain is painted and collision-tested.
+   * Terrain further outside the view, or not yet at its start time, is kept off the stage. A
+   * margin keeps sprites that are about to scroll in, or that paint beyond their bounds, from
+   * appearing late.
+   * 
+   * @param margin
+   *          the cull margin
+   * @throws IllegalArgumentException
+   *           if margin is negative
+   */
+  public void setCullMargin(int margin) throws IllegalArgumentException
+  {
+    if (margin < 0)
+    {
+      throw new IllegalArgumentException("The cull margin cannot be negative");
+    }
+    ticker.setCullMargin(margin);
+  }
+
+  /**
+   * Decouples the game from the metronome. The protagonist's physics advances in fixed steps of
+   * the given length, the game time follows the wall clock rather than the tick count, and a
+   * protagonist with a raster prototype is rendered interpolated between physics steps. Ticks that
+   * arrive late, or frames that are skipped under load, then change how smoothly the game is drawn
+   * but not how fast it plays.
+   * 
+   * @param step
+   *          the physics time step, or 0 to step the game once per metronome tick
+   * @throws IllegalArgumentException
+   *           if step is negative
+   */
+  public void setFixedTimestep(int step) throws IllegalArgumentException
+  {
+    protagonist.setPhysicsStep(step);
+    physicsStep = step;
+    gameNanos = gameTime * 1000000L;
+    lockstepTime = gameTime;
+    lastNanos = 0;
+  }
+
+  /**
+   * Sets the time of the last tick played in lockstep; called by the stage.
+   * 
+   * @param time
+   *          the lockstep time
+   */
+  void setLockstepTime(int time)
+  {
+    lockstepTime = time;
+  }
+
+  /**
+   * Sets the StageHost ticking this LevelStage; called by the host.
+   * 
+   * @param newHost
+   *          the host, or null to run on the stage's own metronome
+   */
+  void setHost(StageHost newHost)
+  {
+    host = newHost;
+  }
+
+  /**
+   * Restarts the stage and records the protagonist's jumps, with the physics step each takes effect
+   * in, until stopRecording is called. The log always holds the current run from the start of the
+   * level: restart empties it, and restartFromCheckpoint drops the jumps after the checkpoint. With
+   * a fixed physics step, the recording is played in lockstep, so that the terrain time of every
+   * step is its step number times the physics step, as in LevelSimulation. The log can be verified
+   * headlessly with LevelSimulation.run, which steps once per simulated tick, or played back with
+   * replay.
+   * 
+   * @return the log being recorded
+   */
+  public InputLog startRecording()
+  {
+    final InputLog log = new InputLog();
+    recording = log;
+    protagonist.setJumpListener(new JumpListener()
+    {
+      @Override
+      public void jumped(AbstractProtagonistSprite jumper, int step)
+      {
+        log.add(step);
+      }
+    });
+    restart();
+    return log;
+  }
+
+  /**
+   * Stops recording the protagonist's jumps. The stage should be paused or stopped first if the
+   * log is read while the game is still running.
+   * 
+   * @return the recorded log, or null if nothing was being recorded
+   */
+  public InputLog stopRecording()
+  {
+    protagonist.setJumpListener(null);
+    InputLog log = recording;
+    recording = null;
+    return log;
+  }
+
+  /**
+   * Stops playing back a recorded run and returns control of the protagonist to key input.
+   */
+  public void stopReplay()
+  {
+    replaying = false;
+    protagonist.setJumpSchedule(null);
   }
 
+  /**
+   * Enables or disables scrolling dirty-region rendering. When enabled, each frame reuses the
+   * previous one shifted by the terrain's scroll, and only the exposed strip and the regions of
+   * sprites that did not move with the terrain are redrawn.
+   * 
+   * @param enabled
+   *          true to paint with scrolling rendering, false to repaint the whole view each frame
+   */
+  public void setScrollingRendering(boolean enabled)
+  {
+    if (enabled == (scrolling != null))
+    {
+      return;
+    }
+
+    scrolling = enabled ? new ScrollingRenderer(renderer) : null;
+    stage.getView().setRenderer(
+        new TimedRenderer(enabled ? scrolling : renderer, metrics));
+    stage.repaint();
+  }
+
+  /**
+   * Returns the checkpoints of a source, or none if it cannot seek back to them.
+   */
+  private static int[] getCheckpoints(TerrainSource source)
+  {
+    return (source instanceof CheckpointableTerrainSource)
+        ? ((CheckpointableTerrainSource) source).getCheckpoints() : new int[0];
+  }
+
+  /**
+   * Starts ticking the stage, on its host if it has one and on its metronome otherwise.
+   */
+  private void startTicks()
+  {
+    StageHost h = host;
+    if (h != null)
+    {
+      h.start(this);
+    }
+    else
+    {
+      stage.start();
+    }
+  }
+
+  /**
+   * Stops ticking the stage.
+   */
+  private void stopTicks()
+  {
+    StageHost h = host;
+    if (h != null)
+    {
+      h.stop(this);
+    }
+    else
+    {
+      stage.stop();
+    }
+  }
 }
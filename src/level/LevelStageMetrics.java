@@ -0,0 +1,264 @@
+package arcade.level;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import arcade.elements.InputQueue;
+
+/**
+ * Per-tick instrumentation of a LevelStage: tick and paint duration histograms, active and total
+ * terrain counts, collision pair checks, bytes allocated per tick and the protagonist's input
+ * latency. The metrics can be polled directly or through JMX once registered with
+ * LevelStage.registerMBean. Recording costs two clock reads per tick and per paint, plus two
+ * allocation counter reads per tick when allocation tracking is on.
+ * 
+ * @author John Latino
+ *
+ */
+public class LevelStageMetrics implements LevelStageMetricsMBean
+{
+  private static final double NANOS_PER_MILLI = 1e6;
+
+  private Histogram ticks, paints;
+  private volatile int activeTerrain, totalTerrain;
+  private volatile long collisionChecks, allocatedBytes;
+  private volatile boolean allocationTracking;
+  private volatile InputQueue inputs;
+
+  private com.sun.management.ThreadMXBean threads;
+  private long tickStart, allocationStart, checksStart;
+
+  /**
+   * Constructs empty metrics for a level with the given number of terrain sprites.
+   * 
+   * @param totalTerrain
+   *          number of terrain sprites in the level, or -1 if unknown
+   */
+  public LevelStageMetrics(int totalTerrain)
+  {
+    this.totalTerrain = totalTerrain;
+    ticks = new Histogram();
+    paints = new Histogram();
+
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean)
+    {
+      threads = (com.sun.management.ThreadMXBean) bean;
+      allocationTracking = threads.isThreadAllocatedMemorySupported()
+          && threads.isThreadAllocatedMemoryEnabled();
+    }
+  }
+
+  @Override
+  public int getActiveTerrainCount()
+  {
+    return activeTerrain;
+  }
+
+  @Override
+  public long getAllocatedBytesPerTick()
+  {
+    return allocatedBytes;
+  }
+
+  @Override
+  public long getCollisionChecksPerTick()
+  {
+    return collisionChecks;
+  }
+
+  @Override
+  public long getInputCount()
+  {
+    InputQueue queue = inputs;
+    return (queue == null) ? 0 : queue.getLatencyCount();
+  }
+
+  @Override
+  public long getInputDroppedCount()
+  {
+    InputQueue queue = inputs;
+    return (queue == null) ? 0 : queue.getDroppedCount();
+  }
+
+  @Override
+  public double getInputLatencyMaxMillis()
+  {
+    InputQueue queue = inputs;
+    return (queue == null) ? 0.0 : queue.getLatencyMax() / NANOS_PER_MILLI;
+  }
+
+  @Override
+  public double getInputLatencyMeanMillis()
+  {
+    InputQueue queue = inputs;
+    return (queue == null) ? 0.0 : queue.getLatencyMean() / NANOS_PER_MILLI;
+  }
+
+  /**
+   * Returns the histogram of paint durations.
+   * 
+   * @return paint histogram in nanoseconds
+   */
+  public Histogram getPaintHistogram()
+  {
+    return paints;
+  }
+
+  @Override
+  public long getPaintCount()
+  {
+    return paints.getCount();
+  }
+
+  @Override
+  public double getPaintMaxMillis()
+  {
+    return paints.getMax() / NANOS_PER_MILLI;
+  }
+
+  @Override
+  public double getPaintMeanMillis()
+  {
+    return paints.getMean() / NANOS_PER_MILLI;
+  }
+
+  @Override
+  public double getPaintP50Millis()
+  {
+    return paints.getPercentile(50) / NANOS_PER_MILLI;
+  }
+
+  @Override
+  public double getPaintP99Millis()
+  {
+    return paints.getPercentile(99) / NANOS_PER_MILLI;
+  }
+
+  @Override
+  public long getTickCount()
+  {
+    return ticks.getCount();
+  }
+
+  /**
+   * Returns the histogram of tick durations.
+   * 
+   * @return tick histogram in nanoseconds
+   */
+  public Histogram getTickHistogram()
+  {
+    return ticks;
+  }
+
+  @Override
+  public double getTickMaxMillis()
+  {
+    return ticks.getMax() / NANOS_PER_MILLI;
+  }
+
+  @Override
+  public double getTickMeanMillis()
+  {
+    return ticks.getMean() / NANOS_PER_MILLI;
+  }
+
+  @Override
+  public double getTickP50Millis()
+  {
+    return ticks.getPercentile(50) / NANOS_PER_MILLI;
+  }
+
+  @Override
+  public double getTickP99Millis()
+  {
+    return ticks.getPercentile(99) / NANOS_PER_MILLI;
+  }
+
+  @Override
+  public int getTotalTerrainCount()
+  {
+    return totalTerrain;
+  }
+
+  @Override
+  public boolean isAllocationTracking()
+  {
+    return allocationTracking;
+  }
+
+  @Override
+  public void reset()
+  {
+    ticks.reset();
+    paints.reset();
+  }
+
+  @Override
+  public void setAllocationTracking(boolean tracking)
+  {
+    allocationTracking = tracking && threads != null && threads.isThreadAllocatedMemorySupported();
+    if (allocationTracking)
+    {
+      threads.setThreadAllocatedMemoryEnabled(true);
+    }
+  }
+
+  /**
+   * Sets the input queue whose latencies are reported.
+   * 
+   * @param queue
+   *          the protagonist's input queue
+   */
+  void setInputQueue(InputQueue queue)
+  {
+    inputs = queue;
+  }
+
+  /**
+   * Records the duration of a paint.
+   * 
+   * @param nanos
+   *          paint duration in nanoseconds
+   */
+  void paintFinished(long nanos)
+  {
+    paints.record(nanos);
+  }
+
+  /**
+   * Records the end of a tick. Must be called on the thread that called tickStarted.
+   * 
+   * @param active
+   *          number of active terrain sprites
+   * @param checks
+   *          collision pair checks made so far
+   */
+  void tickFinished(int active, long checks)
+  {
+    ticks.record(System.nanoTime() - tickStart);
+    activeTerrain = active;
+    collisionChecks = checks - checksStart;
+    if (allocationTracking)
+    {
+      allocatedBytes = threads.getThreadAllocatedBytes(Thread.currentThread().getId())
+          - allocationStart;
+    }
+  }
+
+  /**
+   * Records the start of a tick.
+   * 
+   * @param checks
+   *          collision pair checks made so far
+   */
+  void tickStarted(long checks)
+  {
+    checksStart = checks;
+    if (allocationTracking)
+    {
+      allocationStart = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    tickStart = System.nanoTime();
+  }
+}
@@ -0,0 +1,157 @@
+package arcade.level;
+
+/**
+ * Management interface of LevelStageMetrics. Durations are reported in milliseconds.
+ * 
+ * @author John Latino
+ *
+ */
+public interface LevelStageMetricsMBean
+{
+  /**
+   * Returns the number of terrain sprites attached at the end of the last tick.
+   * 
+   * @return active terrain sprites
+   */
+  public int getActiveTerrainCount();
+
+  /**
+   * Returns the number of bytes the metronome thread allocated during the last tick.
+   * 
+   * @return bytes allocated, or 0 if allocation tracking is off
+   */
+  public long getAllocatedBytesPerTick();
+
+  /**
+   * Returns the number of exact collision tests made during the last tick.
+   * 
+   * @return collision pair checks
+   */
+  public long getCollisionChecksPerTick();
+
+  /**
+   * Returns the number of key presses the protagonist has handled.
+   * 
+   * @return handled key presses
+   */
+  public long getInputCount();
+
+  /**
+   * Returns the number of key presses dropped because the protagonist's input queue was full.
+   * 
+   * @return dropped key presses
+   */
+  public long getInputDroppedCount();
+
+  /**
+   * Returns the longest time between a key press arriving and the protagonist handling it.
+   * 
+   * @return maximum input latency
+   */
+  public double getInputLatencyMaxMillis();
+
+  /**
+   * Returns the mean time between a key press arriving and the protagonist handling it.
+   * 
+   * @return mean input latency
+   */
+  public double getInputLatencyMeanMillis();
+
+  /**
+   * Returns the number of paints recorded.
+   * 
+   * @return number of paints
+   */
+  public long getPaintCount();
+
+  /**
+   * Returns the longest recorded paint.
+   * 
+   * @return maximum paint duration
+   */
+  public double getPaintMaxMillis();
+
+  /**
+   * Returns the mean paint duration.
+   * 
+   * @return mean paint duration
+   */
+  public double getPaintMeanMillis();
+
+  /**
+   * Returns the median paint duration.
+   * 
+   * @return median paint duration
+   */
+  public double getPaintP50Millis();
+
+  /**
+   * Returns the 99th percentile paint duration.
+   * 
+   * @return 99th percentile paint duration
+   */
+  public double getPaintP99Millis();
+
+  /**
+   * Returns the number of ticks recorded.
+   * 
+   * @return number of ticks
+   */
+  public long getTickCount();
+
+  /**
+   * Returns the longest recorded tick.
+   * 
+   * @return maximum tick duration
+   */
+  public double getTickMaxMillis();
+
+  /**
+   * Returns the mean tick duration.
+   * 
+   * @return mean tick duration
+   */
+  public double getTickMeanMillis();
+
+  /**
+   * Returns the median tick duration.
+   * 
+   * @return median tick duration
+   */
+  public double getTickP50Millis();
+
+  /**
+   * Returns the 99th percentile tick duration.
+   * 
+   * @return 99th percentile tick duration
+   */
+  public double getTickP99Millis();
+
+  /**
+   * Returns the number of terrain sprites in the level, or -1 if unknown, as for streamed and
+   * generated terrain.
+   * 
+   * @return total terrain sprites
+   */
+  public int getTotalTerrainCount();
+
+  /**
+   * Returns true if allocations are measured each tick.
+   * 
+   * @return true if allocation tracking is on
+   */
+  public boolean isAllocationTracking();
+
+  /**
+   * Clears the tick and paint histograms.
+   */
+  public void reset();
+
+  /**
+   * Turns the per-tick allocation measurement on or off.
+   * 
+   * @param tracking
+   *          true to measure allocations
+   */
+  public void setAllocationTracking(boolean tracking);
+}
@@ -0,0 +1,92 @@
+package arcade.level;
+
+import java.util.ArrayList;
+import java.util.NoSuchElementException;
+
+import arcade.elements.AbstractTerrainSprite;
+
+/**
+ * TerrainSource over its own copies of an in-memory Level. The copies are duplicated once, kept
+ * for the source's whole life and reclaimed with it; they are not taken from the level's pool,
+ * which would keep track of them after the source is discarded. Rewinding and seeking reset only
+ * the sprites that have been handed out, in place. The checkpoints are read from the level.
+ * 
+ * @author John Latino
+ *
+ */
+class LevelTerrainSource implements CheckpointableTerrainSource
+{
+  private Level level;
+  private ArrayList<AbstractTerrainSprite> terrain;
+  private int cursor;
+
+  /**
+   * Constructs a source over copies of the level's terrain.
+   * 
+   * @param level
+   *          the level to copy
+   */
+  LevelTerrainSource(Level level)
+  {
+    this.level = level;
+    terrain = new ArrayList<AbstractTerrainSprite>(level.size());
+    for (AbstractTerrainSprite s : level.getSpawnIndex())
+    {
+      terrain.add(s.duplicate());
+    }
+  }
+
+  @Override
+  public int[] getCheckpoints()
+  {
+    return level.getCheckpoints();
+  }
+
+  @Override
+  public int size()
+  {
+    return terrain.size();
+  }
+
+  @Override
+  public AbstractTerrainSprite next()
+  {
+    if (cursor >= terrain.size())
+    {
+      throw new NoSuchElementException();
+    }
+    return terrain.get(cursor++);
+  }
+
+  @Override
+  public int peekStartTime()
+  {
+    return (cursor < terrain.size()) ? terrain.get(cursor).getStartTime() : Integer.MAX_VALUE;
+  }
+
+  @Override
+  public void release(AbstractTerrainSprite sprite)
+  {
+    // the copies are owned by this source for its whole life
+  }
+
+  @Override
+  public void rewind()
+  {
+    for (int i = 0; i < cursor; i++)
+    {
+      terrain.get(i).resetToInitial();
+    }
+    cursor = 0;
+  }
+
+  @Override
+  public void seek(int position)
+  {
+    for (int i = position; i < cursor; i++)
+    {
+      terrain.get(i).resetToInitial();
+    }
+    cursor = position;
+  }
+}
@@ -0,0 +1,330 @@
+package arcade.level;
+
+import java.awt.Component;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import arcade.elements.AbstractProtagonistSprite;
+import arcade.elements.AbstractTerrainSprite;
+import arcade.elements.KeyframeBatch;
+import visual.dynamic.described.Stage;
+
+/**
+ * The tick routine shared by LevelStage and LevelSimulation, so that a level plays the same on
+ * screen and headless. A tick is beginTick, then the protagonist's tick, then endTick: terrain
+ * about to start is spawned first, the protagonist steps and tests for collisions against the
+ * terrain as it was at the end of the previous tick, and only then is the terrain moved to the new
+ * time, the expired terrain dropped and the terrain within the view attached to the protagonist.
+ *
+ * On a LevelStage the protagonist is ticked by the Stage, which also ticks the attached terrain
+ * that owns its key frames; headless, LevelSimulation ticks the protagonist itself and endTick
+ * ticks that terrain instead.
+ *
+ * @author John Latino
+ *
+ */
+class LevelTicker
+{
+  private TerrainSpawner spawner;
+  private AbstractProtagonistSprite protagonist;
+  private Stage stage;
+  private Component view;
+  private ArrayList<AbstractTerrainSprite> changed;
+  private KeyframeBatch keyframes;
+  private Set<AbstractTerrainSprite> shown;
+  private int cullMargin;
+  private ForkJoinPool updatePool;
+  private int parallelThreshold;
+
+  /**
+   * Constructs a headless ticker, which attaches all visible terrain to the protagonist.
+   *
+   * @param spawner
+   *          spawner of the level terrain
+   * @param protagonist
+   *          protagonist of the level
+   */
+  LevelTicker(TerrainSpawner spawner, AbstractProtagonistSprite protagonist)
+  {
+    this(spawner, protagonist, null);
+  }
+
+  /**
+   * Constructs a ticker for the given Stage, which attaches only the terrain within its view to
+   * the protagonist and the stage.
+   *
+   * @param spawner
+   *          spawner of the level terrain
+   * @param protagonist
+   *          protagonist of the level
+   * @param stage
+   *          the stage, or null to play headless
+   */
+  LevelTicker(TerrainSpawner spawner, AbstractProtagonistSprite protagonist, Stage stage)
+  {
+    this.spawner = spawner;
+    this.protagonist = protagonist;
+    this.stage = stage;
+    this.view = (stage == null) ? null : stage.getView();
+
+    changed = new ArrayList<AbstractTerrainSprite>();
+    keyframes = new KeyframeBatch();
+    shown = Collections.newSetFromMap(new IdentityHashMap<AbstractTerrainSprite, Boolean>());
+    cullMargin = LevelStage.DEFAULT_CULL_MARGIN;
+    parallelThreshold = LevelStage.DEFAULT_PARALLEL_THRESHOLD;
+  }
+
+  /**
+   * Starts a tick: makes the terrain sprites whose start time is about to be reached active. They
+   * are attached once endTick finds them within the view.
+   *
+   * @param time
+   *          the current time
+   */
+  void beginTick(int time)
+  {
+    spawner.spawn(time, changed);
+    for (AbstractTerrainSprite s : changed)
+    {
+      keyframes.add(s);
+    }
+    changed.clear();
+  }
+
+  /**
+   * Removes all active terrain sprites from the stage and the protagonist.
+   */
+  void detachTerrain()
+  {
+    keyframes.clear();
+    for (AbstractTerrainSprite s : spawner.getActive())
+    {
+      s.setLocation(-100, -100); // sets terrain's location to be unreachable
+      if (shown.remove(s))
+      {
+        detach(s);
+      }
+    }
+  }
+
+  /**
+   * Ends a tick: moves the track-backed terrain sprites in one batch, drops the terrain sprites
+   * that have reached their REMOVE end state and updates which terrain is within the view.
+   *
+   * @param time
+   *          the current time
+   */
+  void endTick(int time)
+  {
+    // Track-backed sprites ignore their own ticks; they are moved here, after the protagonist, as
+    // the stage would have ticked them
+    keyframes.update(time, updatePool, parallelThreshold);
+
+    spawner.expire(time, changed);
+    for (AbstractTerrainSprite s : changed)
+    {
+      keyframes.remove(s);
+      if (shown.remove(s))
+      {
+        detach(s);
+      }
+    }
+    changed.clear();
+
+    cull(time);
+  }
+
+  /**
+   * Returns the number of pixels around the view within which terrain is attached.
+   *
+   * @return the cull margin
+   */
+  int getCullMargin()
+  {
+    return cullMargin;
+  }
+
+  /**
+   * Returns the number of active track-backed terrain sprites from which the terrain is updated in
+   * parallel.
+   *
+   * @return the parallel threshold
+   */
+  int getParallelThreshold()
+  {
+    return parallelThreshold;
+  }
+
+  /**
+   * Returns the pool the terrain is updated on when there is enough of it.
+   *
+   * @return the pool, or null
+   */
+  ForkJoinPool getParallelUpdate()
+  {
+    return updatePool;
+  }
+
+  /**
+   * Returns the number of active terrain sprites attached to the protagonist.
+   *
+   * @return number of visible terrain sprites
+   */
+  int getVisibleCount()
+  {
+    return shown.size();
+  }
+
+  /**
+   * Returns true if the terrain sprite is attached to the protagonist.
+   *
+   * @param sprite
+   *          an active terrain sprite
+   * @return true if the sprite is visible
+   */
+  boolean isShown(AbstractTerrainSprite sprite)
+  {
+    return shown.contains(sprite);
+  }
+
+  /**
+   * Makes the terrain active again as it was when the spawner was at an earlier position,
+   * positioned at the given time. The current terrain should be detached first, and the source
+   * must be a CheckpointableTerrainSource.
+   *
+   * @param time
+   *          the time at which the spawner was at the earlier position
+   * @param from
+   *          the spawner's first active position at that time
+   * @param to
+   *          the spawner's position at that time
+   */
+  void restore(int time, int from, int to)
+  {
+    spawner.seek(from, to, time);
+    for (AbstractTerrainSprite s : spawner.getActive())
+    {
+      s.setVisible(true);
+      s.handleTick(time);
+      keyframes.add(s);
+    }
+    cull(time);
+  }
+
+  /**
+   * Sets the number of pixels around the view within which terrain is attached.
+   *
+   * @param margin
+   *          the cull margin
+   */
+  void setCullMargin(int margin)
+  {
+    cullMargin = margin;
+  }
+
+  /**
+   * Sets the number of active track-backed terrain sprites from which the terrain is updated in
+   * parallel.
+   *
+   * @param threshold
+   *          the parallel threshold
+   */
+  void setParallelThreshold(int threshold)
+  {
+    parallelThreshold = threshold;
+  }
+
+  /**
+   * Sets the pool the terrain is updated on when there is enough of it.
+   *
+   * @param pool
+   *          the pool, or null to update the terrain on the tick thread
+   */
+  void setParallelUpdate(ForkJoinPool pool)
+  {
+    updatePool = pool;
+  }
+
+  /**
+   * Sets the protagonist the terrain is attached to, moving the attached terrain to it.
+   *
+   * @param newProtagonist
+   *          the protagonist
+   */
+  void setProtagonist(AbstractProtagonistSprite newProtagonist)
+  {
+    for (AbstractTerrainSprite s : spawner.getActive())
+    {
+      if (shown.contains(s))
+      {
+        protagonist.removeAntagonist(s);
+        newProtagonist.addAntagonist(s);
+      }
+    }
+    protagonist = newProtagonist;
+  }
+
+  /**
+   * Attaches the active terrain sprites that are visible within the view and its margin to the
+   * protagonist and the stage, and detaches the others. Sprites that do not belong to the keyframe
+   * batch and are not ticked by the stage are ticked here, so that they still move.
+   */
+  private void cull(int time)
+  {
+    double left = -cullMargin;
+    double top = -cullMargin;
+    double right = (view == null) ? 0 : view.getWidth() + cullMargin;
+    double bottom = (view == null) ? 0 : view.getHeight() + cullMargin;
+
+    List<AbstractTerrainSprite> active = spawner.getActive();
+    for (int i = 0; i < active.size(); i++)
+    {
+      AbstractTerrainSprite s = active.get(i);
+      boolean attached = shown.contains(s);
+      if ((stage == null || !attached) && !keyframes.contains(s))
+      {
+        s.handleTick(time);
+      }
+
+      boolean inView = s.isVisible();
+      if (inView && view != null)
+      {
+        Rectangle2D bounds = s.getBounds2D();
+        inView = bounds == null || (bounds.getMaxX() >= left && bounds.getMinX() <= right
+            && bounds.getMaxY() >= top && bounds.getMinY() <= bottom);
+      }
+
+      if (inView && !attached)
+      {
+        shown.add(s);
+        protagonist.addAntagonist(s);
+        if (stage != null)
+        {
+          stage.add(s);
+        }
+      }
+      else if (!inView && attached)
+      {
+        shown.remove(s);
+        detach(s);
+      }
+    }
+  }
+
+  /**
+   * Removes a terrain sprite from the stage and the protagonist.
+   */
+  private void detach(AbstractTerrainSprite s)
+  {
+    if (stage != null)
+    {
+      stage.remove(s);
+    }
+    protagonist.removeAntagonist(s);
+  }
+}
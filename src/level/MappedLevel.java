@@ -0,0 +1,226 @@
+package arcade.level;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.NoSuchElementException;
+
+import arcade.elements.AbstractTerrainSprite;
+
+/**
+ * A LevelFile mapped into memory. Opening a mapped level only reads its header and checkpoints; the
+ * terrain columns stay in the mapped file and sprites are materialized one at a time as the stage
+ * reaches them, so even very large levels open quickly with a small heap. A MappedLevel is
+ * read-only and may be shared by any number of stages, each with its own source.
+ * 
+ * @author John Latino
+ *
+ */
+public class MappedLevel
+{
+  private MappedByteBuffer buffer;
+  private TerrainRegistry registry;
+  private int count;
+  private int[] checkpoints;
+  private int typeOffset, startTimeOffset, initialYOffset;
+
+  /**
+   * Maps the given level file.
+   * 
+   * @param file
+   *          the level file
+   * @param registry
+   *          registry resolving the type ids
+   * @throws IOException
+   *           if the file cannot be read or is not a supported level file
+   */
+  public MappedLevel(File file, TerrainRegistry registry) throws IOException
+  {
+    this.registry = registry;
+
+    RandomAccessFile in = new RandomAccessFile(file, "r");
+    try
+    {
+      FileChannel channel = in.getChannel();
+      if (channel.size() < LevelFile.HEADER_SIZE || channel.size() > Integer.MAX_VALUE)
+      {
+        throw new IOException("Not a level file: " + file);
+      }
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    finally
+    {
+      // the mapping remains valid after the channel is closed
+      in.close();
+    }
+
+    if (buffer.getInt(0) != LevelFile.MAGIC)
+    {
+      throw new IOException("Not a level file: " + file);
+    }
+    if (buffer.getInt(4) != LevelFile.VERSION)
+    {
+      throw new IOException("Unsupported level file version " + buffer.getInt(4));
+    }
+
+    count = buffer.getInt(8);
+    int checkpointCount = buffer.getInt(12);
+    long checkpointOffset = LevelFile.checkpointOffset(count);
+    if (count < 0 || checkpointCount < 0
+        || checkpointOffset + 4L * checkpointCount > buffer.capacity())
+    {
+      throw new IOException("Truncated level file: " + file);
+    }
+
+    typeOffset = LevelFile.HEADER_SIZE;
+    startTimeOffset = (int) LevelFile.startTimeOffset(count);
+    initialYOffset = (int) LevelFile.initialYOffset(count);
+
+    checkpoints = new int[checkpointCount];
+    for (int i = 0; i < checkpointCount; i++)
+    {
+      checkpoints[i] = buffer.getInt((int) checkpointOffset + 4 * i);
+    }
+  }
+
+  /**
+   * Returns a sorted copy of the checkpoint times.
+   * 
+   * @return checkpoint times in ascending order
+   */
+  public int[] getCheckpoints()
+  {
+    return checkpoints.clone();
+  }
+
+  /**
+   * Returns the initial y position of the i-th terrain sprite.
+   * 
+   * @param i
+   *          sprite index, in spawn order
+   * @return initial y position
+   */
+  public double getInitialY(int i)
+  {
+    return buffer.getDouble(initialYOffset + 8 * i);
+  }
+
+  /**
+   * Returns the highest start time in the level plus the given offset.
+   * 
+   * @param offset
+   *          milliseconds to add
+   * @return Level end time
+   */
+  public int getLevelEndTime(int offset)
+  {
+    return ((count == 0) ? 0 : getStartTime(count - 1)) + offset;
+  }
+
+  /**
+   * Returns the start time of the i-th terrain sprite.
+   * 
+   * @param i
+   *          sprite index, in spawn order
+   * @return start time
+   */
+  public int getStartTime(int i)
+  {
+    return buffer.getInt(startTimeOffset + 4 * i);
+  }
+
+  /**
+   * Returns the type id of the i-th terrain sprite.
+   * 
+   * @param i
+   *          sprite index, in spawn order
+   * @return type id
+   */
+  public int getTypeId(int i)
+  {
+    return buffer.get(typeOffset + i) & 0xff;
+  }
+
+  /**
+   * Returns a new TerrainSource that materializes the level's sprites as they are reached. Sprites
+   * handed back to the source are reused for later obstacles of the same type, and a stage playing
+   * the source can restart from the level's checkpoints.
+   * 
+   * @return a new terrain source
+   */
+  public CheckpointableTerrainSource newSource()
+  {
+    return new MappedTerrainSource();
+  }
+
+  /**
+   * Returns the number of terrain sprites in the level.
+   * 
+   * @return number of sprites
+   */
+  public int size()
+  {
+    return count;
+  }
+
+  /**
+   * TerrainSource that reads the mapped columns at a cursor.
+   */
+  private class MappedTerrainSource implements CheckpointableTerrainSource
+  {
+    private int cursor;
+    private TerrainPool pool = new TerrainPool();
+
+    @Override
+    public AbstractTerrainSprite next()
+    {
+      if (cursor >= count)
+      {
+        throw new NoSuchElementException();
+      }
+
+      AbstractTerrainSprite s = pool.acquire(registry.getFactory(getTypeId(cursor)),
+          getStartTime(cursor), getInitialY(cursor));
+      cursor++;
+      return s;
+    }
+
+    @Override
+    public int peekStartTime()
+    {
+      return (cursor < count) ? getStartTime(cursor) : Integer.MAX_VALUE;
+    }
+
+    @Override
+    public void release(AbstractTerrainSprite sprite)
+    {
+      pool.release(sprite);
+    }
+
+    @Override
+    public int[] getCheckpoints()
+    {
+      return MappedLevel.this.getCheckpoints();
+    }
+
+    @Override
+    public int size()
+    {
+      return count;
+    }
+
+    @Override
+    public void rewind()
+    {
+      cursor = 0;
+    }
+
+    @Override
+    public void seek(int position)
+    {
+      cursor = position;
+    }
+  }
+}
@@ -0,0 +1,308 @@
+package arcade.level;
+
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+
+import arcade.elements.AbstractProtagonistSprite;
+import visual.Visualization;
+import visual.VisualizationRenderer;
+import visual.VisualizationView;
+import visual.dynamic.described.Sprite;
+import visual.statik.TransformableContent;
+
+/**
+ * Renderer decorator for side-scrolling stages. The previous frame is kept in a back buffer; on
+ * each paint the buffer is shifted by the horizontal displacement shared by most of the content,
+ * and the decorated renderer only redraws, through a clip, the strip exposed by the shift and the
+ * old and new bounds of content that did not move with the scroll. The buffer moves by whole
+ * pixels; the fraction of a pixel left over is carried into the next frame's shift, so content that
+ * scrolls by a fraction of a pixel per frame is still copied rather than redrawn, and never drifts
+ * more than a pixel from where it would be drawn. Falls back to a full redraw on the first frame,
+ * after invalidate(), when the view is resized, or when the scroll is wider than the view.
+ *
+ * Content is assumed to look the same whenever its bounds are unchanged; call invalidate() after
+ * changing the appearance of content in place.
+ *
+ * @author John Latino
+ *
+ */
+class ScrollingRenderer implements VisualizationRenderer
+{
+  // Pixels added around bounds to cover antialiasing and the pixel that copied content can drift
+  private static final int MARGIN = 2;
+  private static final double EPSILON = 1e-6;
+
+  private VisualizationRenderer decorated;
+  private BufferedImage buffer;
+  private Graphics2D bufferGraphics;
+  private IdentityHashMap<TransformableContent, Rectangle2D> previous;
+  private IdentityHashMap<TransformableContent, Rectangle2D> current;
+  private double[] deltas;
+  private double carry;
+  private Path2D.Double dirty;
+  private boolean valid;
+
+  /**
+   * Constructs a ScrollingRenderer.
+   *
+   * @param decorated
+   *          the renderer that draws the content
+   */
+  ScrollingRenderer(VisualizationRenderer decorated)
+  {
+    this.decorated = decorated;
+    previous = new IdentityHashMap<TransformableContent, Rectangle2D>();
+    current = new IdentityHashMap<TransformableContent, Rectangle2D>();
+    deltas = new double[16];
+    dirty = new Path2D.Double(Path2D.WIND_NON_ZERO);
+    valid = false;
+  }
+
+  /**
+   * Returns the renderer that draws the content.
+   *
+   * @return the decorated renderer
+   */
+  VisualizationRenderer getDecorated()
+  {
+    return decorated;
+  }
+
+  /**
+   * Forces the next frame to be redrawn in full.
+   */
+  void invalidate()
+  {
+    valid = false;
+  }
+
+  @Override
+  public void preRendering(Graphics g, Visualization model, VisualizationView view)
+  {
+    int width = Math.max(1, view.getWidth());
+    int height = Math.max(1, view.getHeight());
+
+    if (buffer == null || buffer.getWidth() != width || buffer.getHeight() != height)
+    {
+      if (bufferGraphics != null)
+      {
+        bufferGraphics.dispose();
+      }
+      buffer = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+      bufferGraphics = buffer.createGraphics();
+      valid = false;
+    }
+
+    boolean partial = valid && collectDirty(model, width, height);
+    if (!valid)
+    {
+      collectBounds(model);
+    }
+    if (!partial)
+    {
+      carry = 0.0;
+    }
+
+    bufferGraphics.setClip(partial ? dirty : null);
+    decorated.preRendering(bufferGraphics, model, view);
+    valid = true;
+  }
+
+  @Override
+  public void render(Graphics g, Visualization model, VisualizationView view)
+  {
+    decorated.render(bufferGraphics, model, view);
+  }
+
+  @Override
+  public void postRendering(Graphics g, Visualization model, VisualizationView view)
+  {
+    decorated.postRendering(bufferGraphics, model, view);
+    g.drawImage(buffer, 0, 0, null);
+  }
+
+  /**
+   * Records the bounds of all visible content for the next frame.
+   *
+   * @param model
+   *          the visualization being painted
+   */
+  private void collectBounds(Visualization model)
+  {
+    swap();
+    for (Iterator<TransformableContent> i = model.iterator(); i.hasNext();)
+    {
+      TransformableContent content = i.next();
+      Rectangle2D bounds = visibleBounds(content);
+      if (bounds != null)
+      {
+        current.put(content, bounds);
+      }
+    }
+  }
+
+  /**
+   * Records the bounds of all visible content, shifts the back buffer by the shared horizontal
+   * displacement and collects the region that must be redrawn into the dirty path.
+   *
+   * @param model
+   *          the visualization being painted
+   * @param width
+   *          view width
+   * @param height
+   *          view height
+   * @return true if only the dirty path must be redrawn, false for a full redraw
+   */
+  private boolean collectDirty(Visualization model, int width, int height)
+  {
+    collectBounds(model);
+
+    // Majority vote over the displacement of content present in both frames
+    int count = 0;
+    for (TransformableContent content : current.keySet())
+    {
+      Rectangle2D before = previous.get(content);
+      Rectangle2D after = current.get(content);
+      if (before != null && Math.abs(after.getY() - before.getY()) < EPSILON)
+      {
+        if (count == deltas.length)
+        {
+          deltas = Arrays.copyOf(deltas, count * 2);
+        }
+        deltas[count++] = after.getX() - before.getX();
+      }
+    }
+    double shift = mode(deltas, count);
+
+    // Move the buffer by whole pixels and carry the remainder, so that the copied content stays
+    // within half a pixel of the scroll
+    double total = carry + shift;
+    int dx = (int) Math.round(total);
+    if (Math.abs(dx) >= width)
+    {
+      return false;
+    }
+    carry = total - dx;
+
+    // The path's nonzero winding makes the clip the union of its rectangles
+    dirty.reset();
+    if (dx < 0)
+    {
+      addRectangle(width + dx, 0, -dx, height);
+    }
+    else if (dx > 0)
+    {
+      addRectangle(0, 0, dx, height);
+    }
+
+    // Content that did not scroll: redraw where it was (after the shift) and where it is now
+    for (TransformableContent content : current.keySet())
+    {
+      Rectangle2D before = previous.remove(content);
+      Rectangle2D after = current.get(content);
+      if (!scrolled(before, after, shift))
+      {
+        if (before != null)
+        {
+          addPixels(before, dx);
+        }
+        addPixels(after, 0);
+      }
+    }
+    // Content removed since the last frame
+    for (Rectangle2D before : previous.values())
+    {
+      addPixels(before, dx);
+    }
+    previous.clear();
+
+    if (dx != 0)
+    {
+      bufferGraphics.setClip(null);
+      bufferGraphics.copyArea(0, 0, width, height, dx, 0);
+    }
+    return true;
+  }
+
+  /**
+   * Adds the pixels covered by the given bounds, moved by dx, to the dirty path.
+   */
+  private void addPixels(Rectangle2D bounds, int dx)
+  {
+    int x0 = (int) Math.floor(bounds.getMinX()) - MARGIN;
+    int y0 = (int) Math.floor(bounds.getMinY()) - MARGIN;
+    int x1 = (int) Math.ceil(bounds.getMaxX()) + MARGIN;
+    int y1 = (int) Math.ceil(bounds.getMaxY()) + MARGIN;
+    addRectangle(x0 + dx, y0, x1 - x0, y1 - y0);
+  }
+
+  /**
+   * Adds a rectangle to the dirty path. Every rectangle winds the same way.
+   */
+  private void addRectangle(int x, int y, int w, int h)
+  {
+    dirty.moveTo(x, y);
+    dirty.lineTo(x + w, y);
+    dirty.lineTo(x + w, y + h);
+    dirty.lineTo(x, y + h);
+    dirty.closePath();
+  }
+
+  /**
+   * Returns the most frequent of the first count values, or 0 if there are none. The array is
+   * sorted in the process.
+   */
+  private static double mode(double[] values, int count)
+  {
+    Arrays.sort(values, 0, count);
+    double best = 0.0;
+    int bestRun = 0;
+    int run = 0;
+    for (int i = 0; i < count; i++)
+    {
+      run = (i > 0 && values[i] - values[i - 1] < EPSILON) ? run + 1 : 1;
+      if (run > bestRun)
+      {
+        bestRun = run;
+        best = values[i];
+      }
+    }
+    return best;
+  }
+
+  private static boolean scrolled(Rectangle2D before, Rectangle2D after, double shift)
+  {
+    return before != null && Math.abs(after.getX() - before.getX() - shift) < EPSILON
+        && Math.abs(after.getY() - before.getY()) < EPSILON
+        && Math.abs(after.getWidth() - before.getWidth()) < EPSILON
+        && Math.abs(after.getHeight() - before.getHeight()) < EPSILON;
+  }
+
+  private static Rectangle2D visibleBounds(TransformableContent content)
+  {
+    if (content instanceof Sprite && !((Sprite) content).isVisible())
+    {
+      return null;
+    }
+    if (content instanceof AbstractProtagonistSprite)
+    {
+      // an interpolated protagonist is drawn between its last two physics states
+      return ((AbstractProtagonistSprite) content).getPaintBounds();
+    }
+    return content.getBounds2D(true);
+  }
+
+  private void swap()
+  {
+    IdentityHashMap<TransformableContent, Rectangle2D> t = previous;
+    previous = current;
+    current = t;
+    current.clear();
+  }
+}
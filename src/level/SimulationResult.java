@@ -0,0 +1,79 @@
+package arcade.level;
+
+import visual.dynamic.described.Sprite;
+
+/**
+ * Outcome of a headless LevelSimulation run.
+ * 
+ * @author John Latino
+ *
+ */
+public class SimulationResult
+{
+  private int ticks, time;
+  private Sprite collision;
+
+  /**
+   * Explicit value constructor.
+   * 
+   * @param ticks
+   *          number of ticks simulated
+   * @param time
+   *          simulated time at the end of the run
+   * @param collision
+   *          the terrain sprite that ended the run, or null if the protagonist survived
+   */
+  public SimulationResult(int ticks, int time, Sprite collision)
+  {
+    this.ticks = ticks;
+    this.time = time;
+    this.collision = collision;
+  }
+
+  /**
+   * Returns the terrain sprite the protagonist collided with.
+   * 
+   * @return the colliding sprite, or null if the protagonist survived
+   */
+  public Sprite getCollision()
+  {
+    return collision;
+  }
+
+  /**
+   * Returns the number of ticks that were simulated.
+   * 
+   * @return number of ticks
+   */
+  public int getTicks()
+  {
+    return ticks;
+  }
+
+  /**
+   * Returns the simulated time at which the run ended.
+   * 
+   * @return end time in milliseconds
+   */
+  public int getTime()
+  {
+    return time;
+  }
+
+  /**
+   * Returns true if the protagonist reached the end of the run without a collision.
+   * 
+   * @return true on victory
+   */
+  public boolean isVictory()
+  {
+    return collision == null;
+  }
+
+  @Override
+  public String toString()
+  {
+    return (isVictory() ? "victory" : "collision") + " after " + ticks + " ticks (" + time
+        + " ms)";
+  }
+}
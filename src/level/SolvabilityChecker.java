@@ -0,0 +1,368 @@
+package arcade.level;
+
+import java.awt.geom.Rectangle2D;
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import arcade.elements.AbstractProtagonistSprite;
+import arcade.elements.AbstractTerrainSprite;
+
+/**
+ * Proves that a Level can be beaten by searching jump timings. The level is simulated tick by tick
+ * with the protagonist's own jump and step, against the terrain as LevelTicker moves it for a
+ * LevelStage: each step is tested against the terrain as it was at the end of the previous tick.
+ * At every tick each reachable protagonist state is expanded with and without a jump, across the
+ * cores of a fork-join pool, and states that collide with an obstacle are dropped. States with the
+ * same vertical state at the same tick behave the same from then on, so only one of them is kept.
+ * If no state survives a tick, that tick holds the first unavoidable collision.
+ * 
+ * Obstacles are compared against the protagonist's bounding box, as in the default
+ * AbstractProtagonistSprite collision test.
+ * 
+ * @author John Latino
+ *
+ */
+public class SolvabilityChecker
+{
+  private static final int SPLIT_THRESHOLD = 16;
+
+  private Level level;
+  private AbstractProtagonistSprite prototype;
+  private int timeStep;
+  private ForkJoinPool pool;
+
+  /**
+   * Constructs a checker that runs on the common fork-join pool.
+   * 
+   * @param inLevel
+   *          Level to check
+   * @param protagonist
+   *          protagonist whose physics are used; it is regenerated, never modified
+   * @param timeStep
+   *          milliseconds of simulated time per tick
+   * @throws InvalidParameterException
+   *           if the level or protagonist parameter is null, or if the timeStep is not
+   *           positive.
+   */
+  public SolvabilityChecker(Level inLevel, AbstractProtagonistSprite protagonist, int timeStep)
+      throws InvalidParameterException
+  {
+    this(inLevel, protagonist, timeStep, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Constructs a checker that uses the given fork-join pool.
+   * 
+   * @param inLevel
+   *          Level to check
+   * @param protagonist
+   *          protagonist whose physics are used; it is regenerated, never modified
+   * @param timeStep
+   *          milliseconds of simulated time per tick
+   * @param pool
+   *          pool running the search; the checker does not shut it down
+   * @throws InvalidParameterException
+   *           if the level or protagonist parameter is null, or if the timeStep is not
+   *           positive.
+   */
+  public SolvabilityChecker(Level inLevel, AbstractProtagonistSprite protagonist, int timeStep,
+      ForkJoinPool pool) throws InvalidParameterException
+  {
+    if (inLevel == null)
+    {
+      throw new InvalidParameterException("Level parameter cannot be null");
+    }
+
+    if (protagonist == null)
+    {
+      throw new InvalidParameterException("Protagonist parameter cannot be null");
+    }
+
+    if (timeStep <= 0)
+    {
+      throw new InvalidParameterException("Time step must be a positive value");
+    }
+
+    this.level = inLevel;
+    this.prototype = protagonist;
+    this.timeStep = timeStep;
+    this.pool = pool;
+  }
+
+  /**
+   * Searches for a jump schedule that carries the protagonist to its victory time (or the level end
+   * time if none is set) without a collision.
+   * 
+   * @return the report
+   */
+  public SolvabilityReport check()
+  {
+    int endTime = (prototype.getVictoryTime() > 0) ? prototype.getVictoryTime()
+        : level.getLevelEndTime();
+    int ticks = (endTime + timeStep - 1) / timeStep;
+
+    AbstractProtagonistSprite start = prototype.regenerate();
+    start.goToInitial();
+    Obstacle[][] obstacles = findObstacles(start, ticks);
+
+    List<State> frontier = new ArrayList<State>();
+    frontier.add(new State(start.saveState(), start.saveVerticalState(), null));
+
+    ThreadLocal<AbstractProtagonistSprite> workers = new ThreadLocal<AbstractProtagonistSprite>()
+    {
+      @Override
+      protected AbstractProtagonistSprite initialValue()
+      {
+        return prototype.regenerate();
+      }
+    };
+
+    for (int tick = 1; tick <= ticks; tick++)
+    {
+      Expansion next = pool.invoke(
+          new Expand(workers, frontier, 0, frontier.size(), tick, obstacles[tick]));
+
+      // keep the first state for each vertical state, in a deterministic order
+      LinkedHashMap<State, State> unique = new LinkedHashMap<State, State>();
+      for (State s : next.states)
+      {
+        if (!unique.containsKey(s))
+        {
+          unique.put(s, s);
+        }
+      }
+
+      if (unique.isEmpty())
+      {
+        return SolvabilityReport.unsolvable(tick, tick * timeStep, next.hit.startTime,
+            next.hit.bounds);
+      }
+      frontier = new ArrayList<State>(unique.values());
+    }
+
+    return SolvabilityReport.solvable(frontier.get(0).getJumpTicks());
+  }
+
+  /**
+   * Plays the level's terrain once and records, for every tick, the bounds of the obstacles that
+   * pass through the protagonist's column while the protagonist steps, which is before the terrain
+   * moves to the tick's time. The column is widened to the protagonist's diagonal so that it covers
+   * every rotation.
+   * 
+   * @param protagonist
+   *          protagonist in its initial state
+   * @param ticks
+   *          number of ticks to record
+   * @return obstacles per tick
+   */
+  private Obstacle[][] findObstacles(AbstractProtagonistSprite protagonist, int ticks)
+  {
+    Rectangle2D bounds = protagonist.getBounds2D();
+    double radius = Math.hypot(bounds.getWidth(), bounds.getHeight()) / 2;
+    double minX = bounds.getCenterX() - radius;
+    double maxX = bounds.getCenterX() + radius;
+
+    Obstacle[][] obstacles = new Obstacle[ticks + 1][];
+    Obstacle[] none = new Obstacle[0];
+    TerrainSpawner spawner = new TerrainSpawner(level.newSource(), timeStep);
+    LevelTicker ticker = new LevelTicker(spawner, protagonist.regenerate());
+    ArrayList<Obstacle> column = new ArrayList<Obstacle>();
+
+    for (int tick = 1; tick <= ticks; tick++)
+    {
+      int time = tick * timeStep;
+      ticker.beginTick(time);
+
+      for (AbstractTerrainSprite s : spawner.getActive())
+      {
+        Rectangle2D b = s.getBounds2D();
+        if (ticker.isShown(s) && b != null && b.getMaxX() >= minX && b.getMinX() <= maxX)
+        {
+          column.add(new Obstacle(s.getStartTime(), (Rectangle2D) b.clone()));
+        }
+      }
+      obstacles[tick] = column.isEmpty() ? none : column.toArray(none);
+      column.clear();
+
+      ticker.endTick(time);
+    }
+
+    return obstacles;
+  }
+
+  /**
+   * Outcome of expanding part of the frontier: the surviving states, in order, and the first
+   * obstacle that was hit.
+   */
+  private static class Expansion
+  {
+    private ArrayList<State> states = new ArrayList<State>();
+    private Obstacle hit;
+  }
+
+  /**
+   * Fork-join task that expands a range of the frontier by one tick.
+   */
+  private class Expand extends RecursiveTask<Expansion>
+  {
+    private static final long serialVersionUID = 1L;
+
+    private ThreadLocal<AbstractProtagonistSprite> workers;
+    private List<State> frontier;
+    private int from, to, tick;
+    private Obstacle[] obstacles;
+
+    private Expand(ThreadLocal<AbstractProtagonistSprite> workers, List<State> frontier, int from,
+        int to, int tick, Obstacle[] obstacles)
+    {
+      this.workers = workers;
+      this.frontier = frontier;
+      this.from = from;
+      this.to = to;
+      this.tick = tick;
+      this.obstacles = obstacles;
+    }
+
+    @Override
+    protected Expansion compute()
+    {
+      if (to - from > SPLIT_THRESHOLD)
+      {
+        int mid = (from + to) >>> 1;
+        Expand left = new Expand(workers, frontier, from, mid, tick, obstacles);
+        Expand right = new Expand(workers, frontier, mid, to, tick, obstacles);
+        left.fork();
+        Expansion r = right.compute();
+        Expansion l = left.join();
+
+        l.states.addAll(r.states);
+        if (l.hit == null)
+        {
+          l.hit = r.hit;
+        }
+        return l;
+      }
+
+      Expansion result = new Expansion();
+      AbstractProtagonistSprite p = workers.get();
+      int time = tick * timeStep;
+      for (int i = from; i < to; i++)
+      {
+        State s = frontier.get(i);
+
+        p.restoreState(s.state);
+        p.step(time);
+        advance(p, s.jumps, result);
+
+        p.restoreState(s.state);
+        if (p.canJump())
+        {
+          p.jump();
+          p.step(time);
+          advance(p, new Jump(tick, s.jumps), result);
+        }
+      }
+      return result;
+    }
+
+    /**
+     * Keeps the protagonist's new state if it does not collide with an obstacle.
+     */
+    private void advance(AbstractProtagonistSprite p, Jump jumps, Expansion result)
+    {
+      Rectangle2D bounds = p.getBounds2D();
+      for (Obstacle o : obstacles)
+      {
+        if (o.bounds.intersects(bounds))
+        {
+          if (result.hit == null)
+          {
+            result.hit = o;
+          }
+          return;
+        }
+      }
+      result.states.add(new State(p.saveState(), p.saveVerticalState(), jumps));
+    }
+  }
+
+  /**
+   * A jump in a schedule, linked to the jumps before it. Schedules that share a prefix share nodes.
+   */
+  private static class Jump
+  {
+    private int tick;
+    private Jump previous;
+
+    private Jump(int tick, Jump previous)
+    {
+      this.tick = tick;
+      this.previous = previous;
+    }
+  }
+
+  /**
+   * Obstacle bounds at one tick.
+   */
+  private static class Obstacle
+  {
+    private int startTime;
+    private Rectangle2D bounds;
+
+    private Obstacle(int startTime, Rectangle2D bounds)
+    {
+      this.startTime = startTime;
+      this.bounds = bounds;
+    }
+  }
+
+  /**
+   * A reachable protagonist state with the jumps that lead to it. States are equal when their
+   * vertical states are equal.
+   */
+  private static class State
+  {
+    private double[] state, vertical;
+    private Jump jumps;
+
+    private State(double[] state, double[] vertical, Jump jumps)
+    {
+      this.state = state;
+      this.vertical = vertical;
+      this.jumps = jumps;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+      return (o instanceof State) && Arrays.equals(vertical, ((State) o).vertical);
+    }
+
+    private int[] getJumpTicks()
+    {
+      int n = 0;
+      for (Jump j = jumps; j != null; j = j.previous)
+      {
+        n++;
+      }
+
+      int[] ticks = new int[n];
+      for (Jump j = jumps; j != null; j = j.previous)
+      {
+        ticks[--n] = j.tick;
+      }
+      return ticks;
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return Arrays.hashCode(vertical);
+    }
+  }
+}
@@ -0,0 +1,129 @@
+package arcade.level;
+
+import java.awt.geom.Rectangle2D;
+
+/**
+ * Outcome of a SolvabilityChecker run: either a jump schedule that beats the level, or the first
+ * collision that no jump schedule can avoid.
+ * 
+ * @author John Latino
+ *
+ */
+public class SolvabilityReport
+{
+  private int[] jumpTicks;
+  private int failureTick, failureTime, obstacleStartTime;
+  private Rectangle2D obstacleBounds;
+
+  /**
+   * Creates a report for a level that can be beaten.
+   * 
+   * @param jumpTicks
+   *          ascending ticks at which to jump
+   * @return the report
+   */
+  static SolvabilityReport solvable(int[] jumpTicks)
+  {
+    SolvabilityReport report = new SolvabilityReport();
+    report.jumpTicks = jumpTicks;
+    report.failureTick = -1;
+    report.failureTime = -1;
+    report.obstacleStartTime = -1;
+    return report;
+  }
+
+  /**
+   * Creates a report for a level that cannot be beaten.
+   * 
+   * @param tick
+   *          tick of the first unavoidable collision
+   * @param time
+   *          time of the first unavoidable collision
+   * @param obstacleStartTime
+   *          start time of the obstacle hit
+   * @param obstacleBounds
+   *          bounds of the obstacle at the time of the collision
+   * @return the report
+   */
+  static SolvabilityReport unsolvable(int tick, int time, int obstacleStartTime,
+      Rectangle2D obstacleBounds)
+  {
+    SolvabilityReport report = new SolvabilityReport();
+    report.failureTick = tick;
+    report.failureTime = time;
+    report.obstacleStartTime = obstacleStartTime;
+    report.obstacleBounds = obstacleBounds;
+    return report;
+  }
+
+  /**
+   * Returns the tick of the first unavoidable collision.
+   * 
+   * @return failure tick, or -1 if the level can be beaten
+   */
+  public int getFailureTick()
+  {
+    return failureTick;
+  }
+
+  /**
+   * Returns the time of the first unavoidable collision.
+   * 
+   * @return failure time in milliseconds, or -1 if the level can be beaten
+   */
+  public int getFailureTime()
+  {
+    return failureTime;
+  }
+
+  /**
+   * Returns a jump schedule that beats the level, in the form accepted by LevelSimulation.run.
+   * 
+   * @return ascending jump ticks, or null if the level cannot be beaten
+   */
+  public int[] getJumpTicks()
+  {
+    return (jumpTicks == null) ? null : jumpTicks.clone();
+  }
+
+  /**
+   * Returns the bounds of the obstacle involved in the first unavoidable collision.
+   * 
+   * @return obstacle bounds, or null if the level can be beaten
+   */
+  public Rectangle2D getObstacleBounds()
+  {
+    return obstacleBounds;
+  }
+
+  /**
+   * Returns the start time of the obstacle involved in the first unavoidable collision.
+   * 
+   * @return obstacle start time, or -1 if the level can be beaten
+   */
+  public int getObstacleStartTime()
+  {
+    return obstacleStartTime;
+  }
+
+  /**
+   * Returns true if a jump schedule that beats the level was found.
+   * 
+   * @return true if the level can be beaten
+   */
+  public boolean isSolvable()
+  {
+    return jumpTicks != null;
+  }
+
+  @Override
+  public String toString()
+  {
+    if (isSolvable())
+    {
+      return "solvable with " + jumpTicks.length + " jumps";
+    }
+    return "unavoidable collision at " + failureTime + " ms with the obstacle starting at "
+        + obstacleStartTime + " ms";
+  }
+}
@@ -0,0 +1,178 @@
+package arcade.level;
+
+import java.util.IdentityHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives many LevelStages from one small pool of worker threads instead of one metronome timer per
+ * stage. Each hosted stage is ticked at its own time step by whichever worker is free, never by
+ * two workers at once, and only while it is running: a paused, killed or removed stage has no
+ * scheduled task and costs nothing. Tick work therefore scales with the number of cores rather
+ * than with the number of stages.
+ *
+ * A hosted stage's own metronome is never started; start, pause, resume, restart and
+ * killProtagonist on the LevelStage schedule and cancel its ticks on the host instead.
+ *
+ * @author John Latino
+ *
+ */
+public class StageHost
+{
+  private ScheduledThreadPoolExecutor scheduler;
+  private IdentityHashMap<LevelStage, ScheduledFuture<?>> running;
+  private int stageCount;
+
+  /**
+   * Constructs a StageHost with one worker per available processor.
+   */
+  public StageHost()
+  {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Constructs a StageHost.
+   *
+   * @param workers
+   *          number of worker threads
+   * @throws IllegalArgumentException
+   *           if workers is not positive
+   */
+  public StageHost(int workers) throws IllegalArgumentException
+  {
+    if (workers <= 0)
+    {
+      throw new IllegalArgumentException("A host needs at least one worker");
+    }
+
+    scheduler = new ScheduledThreadPoolExecutor(workers, new ThreadFactory()
+    {
+      private int count;
+
+      @Override
+      public synchronized Thread newThread(Runnable r)
+      {
+        Thread t = new Thread(r, "stage-host-" + (count++));
+        t.setDaemon(true);
+        return t;
+      }
+    });
+    scheduler.setRemoveOnCancelPolicy(true);
+    running = new IdentityHashMap<LevelStage, ScheduledFuture<?>>();
+  }
+
+  /**
+   * Hosts a LevelStage and starts ticking it. The stage's metronome is stopped.
+   *
+   * @param levelStage
+   *          the stage to host
+   * @throws IllegalArgumentException
+   *           if the stage is already hosted
+   */
+  public void add(LevelStage levelStage) throws IllegalArgumentException
+  {
+    synchronized (this)
+    {
+      if (levelStage.getHost() != null)
+      {
+        throw new IllegalArgumentException("The LevelStage is already hosted");
+      }
+      stageCount++;
+    }
+    levelStage.getStage().stop();
+    levelStage.setHost(this);
+    start(levelStage);
+  }
+
+  /**
+   * Returns the number of hosted stages that are currently being ticked.
+   *
+   * @return number of running stages
+   */
+  public synchronized int getRunningCount()
+  {
+    return running.size();
+  }
+
+  /**
+   * Returns the number of hosted stages.
+   *
+   * @return number of stages
+   */
+  public synchronized int getStageCount()
+  {
+    return stageCount;
+  }
+
+  /**
+   * Stops ticking a LevelStage and hands it back to its own metronome, which is left stopped.
+   *
+   * @param levelStage
+   *          the stage to remove
+   */
+  public void remove(LevelStage levelStage)
+  {
+    synchronized (this)
+    {
+      if (levelStage.getHost() != this)
+      {
+        return;
+      }
+      stageCount--;
+    }
+    stop(levelStage);
+    levelStage.setHost(null);
+  }
+
+  /**
+   * Stops all worker threads. Hosted stages stop being ticked.
+   */
+  public synchronized void shutdown()
+  {
+    scheduler.shutdownNow();
+    running.clear();
+  }
+
+  /**
+   * Schedules a hosted stage's ticks at its time step, unless it is already running.
+   *
+   * @param levelStage
+   *          the stage to start
+   */
+  synchronized void start(final LevelStage levelStage)
+  {
+    if (running.containsKey(levelStage))
+    {
+      return;
+    }
+
+    long period = Math.max(1, levelStage.getTimeStep());
+    ScheduledFuture<?> future = scheduler.scheduleAtFixedRate(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        levelStage.advance();
+      }
+    }, period, period, TimeUnit.MILLISECONDS);
+    running.put(levelStage, future);
+  }
+
+  /**
+   * Cancels a hosted stage's ticks. A tick already in progress is allowed to finish.
+   *
+   * @param levelStage
+   *          the stage to stop
+   */
+  synchronized void stop(LevelStage levelStage)
+  {
+    ScheduledFuture<?> future = running.remove(levelStage);
+    if (future != null)
+    {
+      future.cancel(false);
+    }
+  }
+}
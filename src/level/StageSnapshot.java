@@ -0,0 +1,116 @@
+package arcade.level;
+
+/**
+ * State of a LevelStage captured at a checkpoint: the game time, the protagonist's state and
+ * physics step count, and the positions in the terrain source of the earliest active sprite and
+ * of the next sprite to spawn. Neither the sprites nor their positions on screen are stored: the
+ * active sprites are pulled from the source again, and each sprite's position follows from the
+ * game time. A snapshot holds no references to terrain, so it stays valid with sources that reuse
+ * released sprites for later obstacles.
+ * 
+ * @author John Latino
+ *
+ */
+class StageSnapshot
+{
+  private int time;
+  private int first;
+  private int cursor;
+  private double[] protagonistState;
+  private int steps;
+  private boolean captured;
+
+  /**
+   * Captures a snapshot.
+   * 
+   * @param time
+   *          the game time
+   * @param first
+   *          position of the earliest active terrain sprite in the source
+   * @param cursor
+   *          position of the terrain source
+   * @param protagonistState
+   *          the protagonist's saved state
+   * @param steps
+   *          the protagonist's physics step count
+   */
+  void capture(int time, int first, int cursor, double[] protagonistState, int steps)
+  {
+    this.time = time;
+    this.first = first;
+    this.cursor = cursor;
+    this.protagonistState = protagonistState;
+    this.steps = steps;
+    captured = true;
+  }
+
+  /**
+   * Discards the snapshot.
+   */
+  void clear()
+  {
+    protagonistState = null;
+    captured = false;
+  }
+
+  /**
+   * Returns the position in the terrain source of the earliest sprite that was active at the time
+   * of the snapshot.
+   * 
+   * @return the first active position
+   */
+  int getFirst()
+  {
+    return first;
+  }
+
+  /**
+   * Returns the position of the terrain source at the time of the snapshot.
+   * 
+   * @return the source cursor
+   */
+  int getCursor()
+  {
+    return cursor;
+  }
+
+  /**
+   * Returns the protagonist's state at the time of the snapshot.
+   * 
+   * @return the saved protagonist state
+   */
+  double[] getProtagonistState()
+  {
+    return protagonistState;
+  }
+
+  /**
+   * Returns the protagonist's physics step count at the time of the snapshot.
+   * 
+   * @return number of steps taken
+   */
+  int getSteps()
+  {
+    return steps;
+  }
+
+  /**
+   * Returns the game time of the snapshot.
+   * 
+   * @return the snapshot time
+   */
+  int getTime()
+  {
+    return time;
+  }
+
+  /**
+   * Returns true if a snapshot has been captured.
+   * 
+   * @return true if the snapshot holds state
+   */
+  boolean isCaptured()
+  {
+    return captured;
+  }
+}
@@ -0,0 +1,299 @@
+package arcade.level;
+
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import arcade.elements.AbstractTerrainSprite;
+
+/**
+ * TerrainSource that streams a level from its segments. Only the segment being played, a fixed
+ * number of segments prefetched ahead of it on a background thread, and earlier segments whose
+ * sprites are still on screen are held in memory; a segment is evicted as soon as its last sprite
+ * has been released. Memory use therefore depends on the segment size and the prefetch distance,
+ * not on the length of the level.
+ *
+ * If a segment has not finished loading when it is reached, peekStartTime and next wait for it.
+ *
+ * @author John Latino
+ *
+ */
+public class StreamingTerrainSource implements TerrainSource
+{
+  private static ExecutorService sharedLoader;
+
+  private LevelSegments segments;
+  private int prefetch;
+  private ExecutorService loader;
+
+  private ArrayDeque<Segment> ahead;
+  private Segment current;
+  private int nextToLoad;
+  private int resident;
+  private int lastStartTime;
+  private IdentityHashMap<AbstractTerrainSprite, Segment> owners;
+
+  /**
+   * Constructs a StreamingTerrainSource that loads segments on a background thread shared by all
+   * streaming sources.
+   *
+   * @param segments
+   *          the level's segments
+   * @param prefetch
+   *          number of segments to load ahead of the segment being played
+   * @throws IllegalArgumentException
+   *           if prefetch is negative
+   */
+  public StreamingTerrainSource(LevelSegments segments, int prefetch)
+      throws IllegalArgumentException
+  {
+    this(segments, prefetch, getSharedLoader());
+  }
+
+  /**
+   * Constructs a StreamingTerrainSource that loads segments with the given executor.
+   *
+   * @param segments
+   *          the level's segments
+   * @param prefetch
+   *          number of segments to load ahead of the segment being played
+   * @param loader
+   *          executor that loads the segments
+   * @throws IllegalArgumentException
+   *           if prefetch is negative
+   */
+  public StreamingTerrainSource(LevelSegments segments, int prefetch, ExecutorService loader)
+      throws IllegalArgumentException
+  {
+    if (prefetch < 0)
+    {
+      throw new IllegalArgumentException("Prefetch distance cannot be negative");
+    }
+
+    this.segments = segments;
+    this.prefetch = prefetch;
+    this.loader = loader;
+    ahead = new ArrayDeque<Segment>();
+    owners = new IdentityHashMap<AbstractTerrainSprite, Segment>();
+    lastStartTime = Integer.MIN_VALUE;
+    fill();
+  }
+
+  /**
+   * Returns the number of segments that are loaded or being loaded.
+   *
+   * @return number of resident segments
+   */
+  public int getResidentSegmentCount()
+  {
+    return resident;
+  }
+
+  @Override
+  public AbstractTerrainSprite next()
+  {
+    advance();
+    if (current == null)
+    {
+      throw new NoSuchElementException();
+    }
+
+    AbstractTerrainSprite sprite = current.source.next();
+    if (sprite.getStartTime() < lastStartTime)
+    {
+      throw new IllegalStateException("Segment " + current.index
+          + " starts before the end of the previous segment");
+    }
+    lastStartTime = sprite.getStartTime();
+    owners.put(sprite, current);
+    current.outstanding++;
+    return sprite;
+  }
+
+  @Override
+  public int peekStartTime()
+  {
+    advance();
+    return (current == null) ? Integer.MAX_VALUE : current.source.peekStartTime();
+  }
+
+  @Override
+  public void release(AbstractTerrainSprite sprite)
+  {
+    Segment segment = owners.remove(sprite);
+    if (segment == null)
+    {
+      return;
+    }
+
+    segment.source.release(sprite);
+    segment.outstanding--;
+    if (segment.exhausted && segment.outstanding == 0)
+    {
+      evict(segment);
+    }
+  }
+
+  @Override
+  public void rewind()
+  {
+    // Exhausted segments whose sprites are still out are only referenced through their sprites
+    for (Segment s : owners.values())
+    {
+      if (s != current && s.source != null)
+      {
+        evict(s);
+      }
+    }
+    owners.clear();
+    lastStartTime = Integer.MIN_VALUE;
+
+    // Still on the first segment: rewind it in place and keep the prefetched segments
+    if (current != null && current.index == 0)
+    {
+      current.source.rewind();
+      current.outstanding = 0;
+      return;
+    }
+
+    if (current != null)
+    {
+      evict(current);
+      current = null;
+    }
+    for (Segment s : ahead)
+    {
+      s.future.cancel(false);
+      resident--;
+    }
+    ahead.clear();
+    nextToLoad = 0;
+    fill();
+  }
+
+  /**
+   * Moves to the next segment that still has terrain to play, evicting exhausted segments whose
+   * sprites have all been released.
+   */
+  private void advance()
+  {
+    while (true)
+    {
+      if (current == null)
+      {
+        fill();
+        current = ahead.poll();
+        if (current == null)
+        {
+          return;
+        }
+        open(current);
+        fill();
+      }
+
+      if (current.source.peekStartTime() != Integer.MAX_VALUE)
+      {
+        return;
+      }
+
+      current.exhausted = true;
+      if (current.outstanding == 0)
+      {
+        evict(current);
+      }
+      current = null;
+    }
+  }
+
+  private void evict(Segment segment)
+  {
+    segment.source = null;
+    resident--;
+  }
+
+  /**
+   * Schedules loads until prefetch segments are queued ahead of the current one, or the level has
+   * no more segments. At least one segment is queued when there is no current segment.
+   */
+  private void fill()
+  {
+    int wanted = (current == null) ? Math.max(1, prefetch) : prefetch;
+    while (ahead.size() < wanted && nextToLoad < segments.getSegmentCount())
+    {
+      final int index = nextToLoad++;
+      Segment segment = new Segment(index);
+      segment.future = loader.submit(new Callable<TerrainSource>()
+      {
+        @Override
+        public TerrainSource call() throws Exception
+        {
+          return segments.loadSegment(index);
+        }
+      });
+      ahead.add(segment);
+      resident++;
+    }
+  }
+
+  /**
+   * Waits for a segment to finish loading.
+   */
+  private void open(Segment segment)
+  {
+    try
+    {
+      segment.source = segment.future.get();
+      segment.future = null;
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while loading segment " + segment.index, e);
+    }
+    catch (ExecutionException e)
+    {
+      throw new IllegalStateException("Could not load segment " + segment.index, e.getCause());
+    }
+  }
+
+  private static synchronized ExecutorService getSharedLoader()
+  {
+    if (sharedLoader == null)
+    {
+      sharedLoader = Executors.newSingleThreadExecutor(new ThreadFactory()
+      {
+        @Override
+        public Thread newThread(Runnable r)
+        {
+          Thread t = new Thread(r, "level-segment-loader");
+          t.setDaemon(true);
+          return t;
+        }
+      });
+    }
+    return sharedLoader;
+  }
+
+  /**
+   * A loaded or loading segment.
+   */
+  private static class Segment
+  {
+    private int index;
+    private Future<TerrainSource> future;
+    private TerrainSource source;
+    private int outstanding;
+    private boolean exhausted;
+
+    private Segment(int index)
+    {
+      this.index = index;
+    }
+  }
+}
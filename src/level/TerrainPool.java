@@ -0,0 +1,144 @@
+package arcade.level;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import arcade.elements.AbstractTerrainSprite;
+import arcade.elements.TerrainFactory;
+
+/**
+ * Pool of TerrainSprites. Each pooled sprite remembers the prototype it was duplicated from or the
+ * factory that created it. Released sprites are handed out again instead of duplicating the
+ * prototype or calling the factory a second time: copies of a prototype are reset to their initial
+ * state, and sprites from a factory are relocated to the requested start time and position.
+ * Releasing a sprite that is already in the pool has no effect, so a sprite is never handed out to
+ * two owners.
+ * 
+ * @author John Latino
+ *
+ */
+public class TerrainPool
+{
+  private IdentityHashMap<Object, ArrayList<AbstractTerrainSprite>> free;
+  private IdentityHashMap<AbstractTerrainSprite, Object> owners;
+  private Set<AbstractTerrainSprite> idle;
+
+  /**
+   * Default constructor. Creates an empty pool.
+   */
+  public TerrainPool()
+  {
+    free = new IdentityHashMap<Object, ArrayList<AbstractTerrainSprite>>();
+    owners = new IdentityHashMap<AbstractTerrainSprite, Object>();
+    idle = Collections.newSetFromMap(new IdentityHashMap<AbstractTerrainSprite, Boolean>());
+  }
+
+  /**
+   * Returns a copy of the prototype in its initial state. A released copy is reused if one is
+   * available; otherwise the prototype is duplicated.
+   * 
+   * @param prototype
+   *          the sprite to copy
+   * @return copy of the prototype
+   */
+  public AbstractTerrainSprite acquire(AbstractTerrainSprite prototype)
+  {
+    AbstractTerrainSprite copy = take(prototype);
+    if (copy != null)
+    {
+      copy.resetToInitial();
+      return copy;
+    }
+
+    copy = prototype.duplicate();
+    owners.put(copy, prototype);
+    return copy;
+  }
+
+  /**
+   * Returns a sprite of the factory's type with the given start time and initial y position. A
+   * released sprite from the same factory is relocated if one is available; otherwise the factory
+   * creates a new sprite. Sprites that cannot be relocated are never pooled.
+   * 
+   * @param factory
+   *          the factory for the sprite's type
+   * @param startTime
+   *          spawn time
+   * @param initialY
+   *          initial y position
+   * @return the sprite
+   */
+  public AbstractTerrainSprite acquire(TerrainFactory factory, int startTime, double initialY)
+  {
+    AbstractTerrainSprite sprite = take(factory);
+    if (sprite != null)
+    {
+      sprite.relocate(startTime, initialY);
+      return sprite;
+    }
+
+    sprite = factory.create(startTime, initialY);
+    if (sprite.isRelocatable())
+    {
+      owners.put(sprite, factory);
+    }
+    return sprite;
+  }
+
+  /**
+   * Removes every pooled sprite.
+   */
+  public void clear()
+  {
+    free.clear();
+    owners.clear();
+    idle.clear();
+  }
+
+  /**
+   * Returns a sprite to the pool. Sprites that were not acquired from this pool, or that are
+   * already in it, are ignored.
+   * 
+   * @param sprite
+   *          the sprite to release
+   * @return true if the sprite was returned to the pool
+   */
+  public boolean release(Object sprite)
+  {
+    Object owner = owners.get(sprite);
+    if (owner == null || !idle.add((AbstractTerrainSprite) sprite))
+    {
+      return false;
+    }
+
+    ArrayList<AbstractTerrainSprite> sprites = free.get(owner);
+    if (sprites == null)
+    {
+      sprites = new ArrayList<AbstractTerrainSprite>();
+      free.put(owner, sprites);
+    }
+    sprites.add((AbstractTerrainSprite) sprite);
+    return true;
+  }
+
+  /**
+   * Removes and returns a released sprite belonging to the given owner.
+   * 
+   * @param owner
+   *          prototype or factory
+   * @return a released sprite, or null if there is none
+   */
+  private AbstractTerrainSprite take(Object owner)
+  {
+    ArrayList<AbstractTerrainSprite> sprites = free.get(owner);
+    if (sprites == null || sprites.isEmpty())
+    {
+      return null;
+    }
+    AbstractTerrainSprite sprite = sprites.remove(sprites.size() - 1);
+    idle.remove(sprite);
+    return sprite;
+  }
+}
@@ -0,0 +1,98 @@
+package arcade.level;
+
+import java.util.HashMap;
+
+import arcade.elements.AbstractTerrainSprite;
+import arcade.elements.TerrainFactory;
+
+/**
+ * Maps the numeric type ids used by level files to TerrainSprite classes and the factories that
+ * create them.
+ * 
+ * @author John Latino
+ *
+ */
+public class TerrainRegistry
+{
+  /**
+   * Number of type ids available. Ids are stored as a single byte.
+   */
+  public static final int MAX_TYPES = 256;
+
+  private TerrainFactory[] factories;
+  private HashMap<Class<?>, Integer> ids;
+
+  /**
+   * Default constructor. Creates an empty registry.
+   */
+  public TerrainRegistry()
+  {
+    factories = new TerrainFactory[MAX_TYPES];
+    ids = new HashMap<Class<?>, Integer>();
+  }
+
+  /**
+   * Returns the factory registered for the given type id.
+   * 
+   * @param id
+   *          the type id
+   * @return the factory
+   * @throws IllegalArgumentException
+   *           if no type is registered under the id
+   */
+  public TerrainFactory getFactory(int id) throws IllegalArgumentException
+  {
+    if (id < 0 || id >= MAX_TYPES || factories[id] == null)
+    {
+      throw new IllegalArgumentException("No terrain type registered with id " + id);
+    }
+    return factories[id];
+  }
+
+  /**
+   * Returns the type id registered for the given TerrainSprite class.
+   * 
+   * @param type
+   *          the sprite class
+   * @return the type id
+   * @throws IllegalArgumentException
+   *           if the class is not registered
+   */
+  public int getId(Class<?> type) throws IllegalArgumentException
+  {
+    Integer id = ids.get(type);
+    if (id == null)
+    {
+      throw new IllegalArgumentException("Terrain type " + type.getName() + " is not registered");
+    }
+    return id;
+  }
+
+  /**
+   * Registers a TerrainSprite class and its factory under the given type id.
+   * 
+   * @param id
+   *          the type id, between 0 and MAX_TYPES - 1
+   * @param type
+   *          the sprite class
+   * @param factory
+   *          factory creating sprites of the class
+   * @throws IllegalArgumentException
+   *           if the id is out of range or already in use
+   */
+  public void register(int id, Class<? extends AbstractTerrainSprite> type,
+      TerrainFactory factory) throws IllegalArgumentException
+  {
+    if (id < 0 || id >= MAX_TYPES)
+    {
+      throw new IllegalArgumentException("Terrain type ids must be between 0 and " + MAX_TYPES);
+    }
+    if (factories[id] != null)
+    {
+      throw new IllegalArgumentException("Terrain type id " + id + " is already registered");
+    }
+
+    factories[id] = factory;
+    ids.put(type, id);
+  }
+}
@@ -0,0 +1,44 @@
+package arcade.level;
+
+import arcade.elements.AbstractTerrainSprite;
+
+/**
+ * Supplies the TerrainSprites of a level in ascending start time order. A TerrainSource is a
+ * cursor owned by a single LevelStage or LevelSimulation; sources that do not keep the whole level
+ * in memory materialize sprites as they are reached and may recycle the sprites they get back.
+ * 
+ * @author John Latino
+ *
+ */
+public interface TerrainSource
+{
+  /**
+   * Returns the next TerrainSprite and advances the cursor. The sprite is in its initial state.
+   * 
+   * @return the next sprite
+   * @throws java.util.NoSuchElementException
+   *           if the source is exhausted
+   */
+  public AbstractTerrainSprite next();
+
+  /**
+   * Returns the start time of the next TerrainSprite without advancing the cursor.
+   * 
+   * @return the next start time, or Integer.MAX_VALUE if the source is exhausted
+   */
+  public int peekStartTime();
+
+  /**
+   * Hands back a sprite that has left the scene. The source may reuse it for a later sprite.
+   * 
+   * @param sprite
+   *          sprite that was returned by next
+   */
+  public void release(AbstractTerrainSprite sprite);
+
+  /**
+   * Moves the cursor back to the start of the level. Sprites that are still in use must have been
+   * released first.
+   */
+  public void rewind();
+}
@@ -0,0 +1,204 @@
+package arcade.level;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import arcade.elements.AbstractTerrainSprite;
+
+/**
+ * Pulls TerrainSprites from a TerrainSource in start time order and keeps track of the sprites that
+ * are currently part of the scene. Sprites are attached shortly before their start time and
+ * detached once they reach their REMOVE end state, so the work done per tick depends on the active
+ * sprites rather than on the length of the level. The spawner counts the sprites it pulls, so that
+ * a CheckpointableTerrainSource can be sought back to where an active sprite was pulled.
+ * 
+ * @author John Latino
+ *
+ */
+class TerrainSpawner
+{
+  private TerrainSource source;
+  private int lead;
+  private ArrayList<AbstractTerrainSprite> active;
+  private int[] positions;
+  private int position;
+
+  /**
+   * Constructs a spawner that attaches sprites from the given source the given number of
+   * milliseconds before their start time.
+   * 
+   * @param source
+   *          source of the terrain
+   * @param lead
+   *          spawn lead time
+   */
+  TerrainSpawner(TerrainSource source, int lead)
+  {
+    this.source = source;
+    this.lead = lead;
+    this.active = new ArrayList<AbstractTerrainSprite>();
+    this.positions = new int[16];
+  }
+
+  /**
+   * Returns the sprites that are currently attached, in spawn order.
+   * 
+   * @return the active sprites
+   */
+  List<AbstractTerrainSprite> getActive()
+  {
+    return active;
+  }
+
+  /**
+   * Returns the position at which the earliest active sprite was pulled from the source.
+   * 
+   * @return the earliest active position, or the current position if no sprite is active
+   */
+  int getFirstPosition()
+  {
+    return active.isEmpty() ? position : positions[0];
+  }
+
+  /**
+   * Returns the number of sprites pulled from the source since the last rewind or seek.
+   * 
+   * @return the current position
+   */
+  int getPosition()
+  {
+    return position;
+  }
+
+  /**
+   * Returns the source the terrain is pulled from.
+   * 
+   * @return the terrain source
+   */
+  TerrainSource getSource()
+  {
+    return source;
+  }
+
+  /**
+   * Detaches every sprite that has reached its REMOVE end state at the given time and hands it back
+   * to the source.
+   * 
+   * @param time
+   *          the current time
+   * @param expired
+   *          receives the detached sprites
+   */
+  void expire(int time, Collection<AbstractTerrainSprite> expired)
+  {
+    int kept = 0;
+    for (int i = 0; i < active.size(); i++)
+    {
+      AbstractTerrainSprite s = active.get(i);
+      if (s.isRemovedAt(time))
+      {
+        expired.add(s);
+        source.release(s);
+      }
+      else
+      {
+        positions[kept] = positions[i];
+        active.set(kept++, s);
+      }
+    }
+
+    for (int i = active.size() - 1; i >= kept; i--)
+    {
+      active.remove(i);
+    }
+  }
+
+  /**
+   * Replaces the active sprites with the sprites pulled between two positions that have not
+   * reached their REMOVE end state at the given time, as they were when the spawner was at the
+   * later position. The current active sprites are handed back to the source; callers are
+   * responsible for detaching them first.
+   * 
+   * @param from
+   *          position of the earliest active sprite, as returned by getFirstPosition
+   * @param to
+   *          position to resume from, as returned by getPosition
+   * @param time
+   *          the time at which the spawner was at the later position
+   * @throws ClassCastException
+   *           if the source is not a CheckpointableTerrainSource
+   */
+  void seek(int from, int to, int time)
+  {
+    for (AbstractTerrainSprite s : active)
+    {
+      source.release(s);
+    }
+    active.clear();
+
+    ((CheckpointableTerrainSource) source).seek(from);
+    position = from;
+    while (position < to)
+    {
+      AbstractTerrainSprite s = source.next();
+      if (s.isRemovedAt(time))
+      {
+        source.release(s);
+        position++;
+      }
+      else
+      {
+        pull(s);
+      }
+    }
+  }
+
+  /**
+   * Starts over from the beginning of the source. The active sprites are handed back to the source;
+   * callers are responsible for detaching them first.
+   */
+  void rewind()
+  {
+    for (AbstractTerrainSprite s : active)
+    {
+      source.release(s);
+    }
+    active.clear();
+    source.rewind();
+    position = 0;
+  }
+
+  /**
+   * Attaches every sprite whose start time falls within the lead time of the given time.
+   * 
+   * @param time
+   *          the current time
+   * @param spawned
+   *          receives the attached sprites
+   */
+  void spawn(int time, Collection<AbstractTerrainSprite> spawned)
+  {
+    while (source.peekStartTime() != Integer.MAX_VALUE
+        && source.peekStartTime() - lead <= time)
+    {
+      AbstractTerrainSprite s = source.next();
+      pull(s);
+      spawned.add(s);
+    }
+  }
+
+  /**
+   * Makes a sprite just pulled from the source active, at the current position.
+   */
+  private void pull(AbstractTerrainSprite s)
+  {
+    if (active.size() == positions.length)
+    {
+      positions = Arrays.copyOf(positions, positions.length * 2);
+    }
+    positions[active.size()] = position++;
+    active.add(s);
+  }
+}
@@ -0,0 +1,54 @@
+package arcade.level;
+
+import java.awt.Graphics;
+
+import visual.Visualization;
+import visual.VisualizationRenderer;
+import visual.VisualizationView;
+
+/**
+ * Renderer decorator that records how long each paint of the decorated renderer takes.
+ * 
+ * @author John Latino
+ *
+ */
+class TimedRenderer implements VisualizationRenderer
+{
+  private VisualizationRenderer decorated;
+  private LevelStageMetrics metrics;
+  private long start;
+
+  /**
+   * Constructs a TimedRenderer.
+   * 
+   * @param decorated
+   *          the renderer to time
+   * @param metrics
+   *          receives the paint durations
+   */
+  TimedRenderer(VisualizationRenderer decorated, LevelStageMetrics metrics)
+  {
+    this.decorated = decorated;
+    this.metrics = metrics;
+  }
+
+  @Override
+  public void postRendering(Graphics g, Visualization model, VisualizationView view)
+  {
+    decorated.postRendering(g, model, view);
+    metrics.paintFinished(System.nanoTime() - start);
+  }
+
+  @Override
+  public void preRendering(Graphics g, Visualization model, VisualizationView view)
+  {
+    start = System.nanoTime();
+    decorated.preRendering(g, model, view);
+  }
+
+  @Override
+  public void render(Graphics g, Visualization model, VisualizationView view)
+  {
+    decorated.render(g, model, view);
+  }
+}
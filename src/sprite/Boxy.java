@@ -2,9 +2,12 @@ package sprite;
 
 import java.awt.BasicStroke;
 import java.awt.Color;
+import java.awt.Shape;
+import java.awt.Stroke;
 import java.awt.geom.Ellipse2D;
 import java.awt.geom.Rectangle2D;
 
+import arcade.elements.ContentRegistry;
 import visual.statik.described.AggregateContent;
 import visual.statik.described.Content;
 
@@ -17,30 +20,29 @@ import visual.statik.described.Content;
  */
 public class Boxy extends AggregateContent
 {
+  // The shapes, stroke and colors are shared between all Boxys; each Boxy owns only its Contents
+  private static final Shape HEAD = ContentRegistry.share(new Rectangle2D.Double(0.0, 0.0, 80.0,
+      80.0));
+  private static final Shape MOUTH = ContentRegistry.share(new Rectangle2D.Double(10.0, 65.0,
+      60.0, 10.0));
+  private static final Shape LEFT_EYE = ContentRegistry.share(new Ellipse2D.Double(20 - 10,
+      30 - 10, 20.0, 20.0));
+  private static final Shape RIGHT_EYE = ContentRegistry.share(new Ellipse2D.Double(60 - 10,
+      30 - 10, 20.0, 20.0));
+  private static final Stroke STROKE = ContentRegistry.share(new BasicStroke(1));
+  private static final Color HEAD_FILL = new Color(0x99, 0x99, 0x99);
+  private static final Color FACE_FILL = new Color(0xcc, 0xcc, 0xcc);
+
   /**
    * Default constructor for Boxy. Creates a new Boxy AggregateContent.
    */
   public Boxy()
   {
-    Rectangle2D head, mouth;
-    Ellipse2D left, right;
-    Content boxyHead, leftEye, rightEye, boxyMouth;
-
-    BasicStroke stroke = new BasicStroke(1);
-    Color headFill = new Color(0x99, 0x99, 0x99);
-    Color faceFill = new Color(0xcc, 0xcc, 0xcc);
-
-    // Create the shapes.
-    head = new Rectangle2D.Double(0.0, 0.0, 80.0, 80.0);
-    mouth = new Rectangle2D.Double(10.0, 65.0, 60.0, 10.0);
-    left = new Ellipse2D.Double(20 - 10, 30 - 10, 20.0, 20.0);
-    right = new Ellipse2D.Double(60 - 10, 30 - 10, 20.0, 20.0);
-
-    // Create each piece of individual content.
-    boxyHead = new Content(head, Color.BLACK, headFill, stroke);
-    boxyMouth = new Content(mouth, Color.BLACK, faceFill, stroke);
-    leftEye = new Content(left, Color.BLACK, faceFill, stroke);
-    rightEye = new Content(right, Color.BLACK, faceFill, stroke);
+    // Create each piece of individual content around the shared shapes.
+    Content boxyHead = new Content(HEAD, Color.BLACK, HEAD_FILL, STROKE);
+    Content boxyMouth = new Content(MOUTH, Color.BLACK, FACE_FILL, STROKE);
+    Content leftEye = new Content(LEFT_EYE, Color.BLACK, FACE_FILL, STROKE);
+    Content rightEye = new Content(RIGHT_EYE, Color.BLACK, FACE_FILL, STROKE);
 
     // Add content to Boxy.
     add(boxyHead);
@@ -3,6 +3,7 @@ package sprite;
 import java.awt.event.KeyEvent;
 
 import arcade.elements.AbstractProtagonistSprite;
+import visual.statik.TransformableContent;
 
 /**
  * Demo class that demonstrates a realization of the AbstractProtagonistSprite.
@@ -11,6 +12,9 @@ import arcade.elements.AbstractProtagonistSprite;
  */
 public class DemoProtagonist extends AbstractProtagonistSprite
 {
+  // Boxy used only to fill raster caches, shared by every DemoProtagonist
+  private static final Boxy RASTER_PROTOTYPE = new Boxy();
+
   private int bottom;
   private double curAngle, apexY, apexR;
   private boolean isFalling, isRising, apexSet;
@@ -27,19 +31,27 @@ public class DemoProtagonist extends AbstractProtagonistSprite
     this.bottom = bottom;
   }
 
+  @Override
+  public boolean canJump()
+  {
+    return !isFalling && !isRising;
+  }
+
   @Override
   public void goToInitial()
   {
     isRising = false;
     isFalling = false;
+    apexSet = false;
     curAngle = 0;
+    apexR = 0;
     this.setRotation(0);
     y = yInitial;
     x = xInitial;
   }
 
   @Override
-  public void handleTick(int e)
+  public void step(int e)
   {
     if (isRising)
     {
@@ -80,6 +92,12 @@ public class DemoProtagonist extends AbstractProtagonistSprite
 
   }
 
+  @Override
+  protected TransformableContent getRasterPrototype()
+  {
+    return RASTER_PROTOTYPE;
+  }
+
   /**
    * Increases the rotation angle and sets the rotation.
    */
@@ -109,11 +127,11 @@ public class DemoProtagonist extends AbstractProtagonistSprite
   }
 
   @Override
-  public void keyPressed(KeyEvent e)
+  protected void handleKeyPress(int keyCode, char keyChar)
   {
-    if (e.getKeyChar() == KeyEvent.VK_SPACE && !isFalling && !isRising)
+    if (keyChar == KeyEvent.VK_SPACE)
     {
-      jump();
+      requestJump();
     }
   }
 
@@ -124,8 +142,36 @@ public class DemoProtagonist extends AbstractProtagonistSprite
 
     newSprite.setXInitial(xInitial);
     newSprite.setYInitial(yInitial);
+    newSprite.setRasterCache(getRasterCache());
 
     return newSprite;
   }
 
+  @Override
+  public void restoreState(double[] state)
+  {
+    super.restoreState(state);
+    curAngle = state[2];
+    apexY = state[3];
+    apexR = state[4];
+    isRising = state[5] != 0;
+    isFalling = state[6] != 0;
+    apexSet = state[7] != 0;
+    setRotation(curAngle);
+  }
+
+  @Override
+  public double[] saveState()
+  {
+    return new double[] { x, y, curAngle, apexY, apexR, isRising ? 1 : 0, isFalling ? 1 : 0,
+        apexSet ? 1 : 0 };
+  }
+
+  @Override
+  public double[] saveVerticalState()
+  {
+    return new double[] { y, curAngle, apexY, apexR, isRising ? 1 : 0, isFalling ? 1 : 0,
+        apexSet ? 1 : 0 };
+  }
+
 }
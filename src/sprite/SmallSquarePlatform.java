@@ -3,13 +3,17 @@ package sprite;
 import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Paint;
+import java.awt.Shape;
+import java.awt.Stroke;
 import java.awt.geom.Rectangle2D;
 
+import arcade.elements.ContentRegistry;
 import visual.statik.described.AggregateContent;
 import visual.statik.described.Content;
 
 /**
- * Content for a Small Square Platform terrain sprite.
+ * Content for a Small Square Platform terrain sprite. Every platform draws the same shared box and
+ * stroke; only its Content, which carries the platform's transform, is its own.
  * 
  * @author John Latino
  *
@@ -18,6 +22,9 @@ public class SmallSquarePlatform extends AggregateContent
 {
   private static Double SMALL_BOX_HEIGHT = 100.0;
   private static Double SMALL_BOX_WIDTH = 100.0;
+  private static final Shape BOX = ContentRegistry
+      .share(new Rectangle2D.Double(0, 0, SMALL_BOX_WIDTH, SMALL_BOX_HEIGHT));
+  private static final Stroke STROKE = ContentRegistry.share(new BasicStroke(1));
 
   /**
    * Default Constructor. Creates default sized ShapeRun spike with the default colors.
@@ -37,10 +44,6 @@ public class SmallSquarePlatform extends AggregateContent
    */
   public SmallSquarePlatform(Color color, Paint paint)
   {
-    Rectangle2D rect = new Rectangle2D.Double(0, 0, SMALL_BOX_WIDTH, SMALL_BOX_HEIGHT);
-
-    Content platform = new Content(rect, color, paint, new BasicStroke(1));
-
-    this.add(platform);
+    this.add(new Content(BOX, color, paint, STROKE));
   }
 }
@@ -1,9 +1,9 @@
 package sprite;
 
-import java.awt.geom.Point2D;
-
 import arcade.elements.AbstractTerrainSprite;
-import visual.statik.described.AggregateContent;
+import arcade.elements.KeyframeTrack;
+import arcade.elements.TerrainFactory;
+import visual.statik.TransformableContent;
 
 /**
  * SmallSquarePlatform sprite. A demonstration of how the AbstractTerrainSprite abstract class is
@@ -13,6 +13,35 @@ import visual.statik.described.AggregateContent;
  */
 public class SmallSquarePlatformSprite extends AbstractTerrainSprite
 {
+  /**
+   * Factory for platforms, for levels that are loaded from data.
+   */
+  public static final TerrainFactory FACTORY = new TerrainFactory()
+  {
+    @Override
+    public AbstractTerrainSprite create(int startTime, double initialY)
+    {
+      return new SmallSquarePlatformSprite(initialY, startTime);
+    }
+  };
+
+  /**
+   * Shared track that moves a platform across the screen at a constant rate (Left <-- Right).
+   * Removing the last key frame will remove the platform the instant it touches x = 0.
+   */
+  private static final KeyframeTrack TRACK = new KeyframeTrack(
+      new int[] { 0, 400, 800, 1200, 1600, 2000 },
+      new double[] { 1000.0, 750.0, 500.0, 250.0, 0.0, -250.0 },
+      new double[] { 0.0, 0.0, 0.0, 0.0, 0.0, 0.0 },
+      new double[] { 0.00, 0.00, 0.00, 0.00, 0.00, 0.00 },
+      new double[] { 1.0, 1.0, 1.0, 1.0, 1.0, 1.0 });
+
+  /**
+   * Platform content used only to fill raster caches, so that every platform shares the cached
+   * images.
+   */
+  private static final SmallSquarePlatform RASTER_PROTOTYPE = new SmallSquarePlatform();
+
   /**
    * Default Constructor for a Spike Sprite that: 1. Moves a spike obstacle across the screen at a
    * constant rate. (Left <-- Right) 2. Sets spike's vertical position to the given y-value. This
@@ -20,19 +49,7 @@ public class SmallSquarePlatformSprite extends AbstractTerrainSprite
    */
   public SmallSquarePlatformSprite()
   {
-    super(50, 0);
-    SmallSquarePlatform ssp = new SmallSquarePlatform();
-
-    addKeyTime(50, 1000.0, 600.0, 0.00, 1.0, ssp);
-    addKeyTime(450, 750.0, 600.0, 0.00, 1.0, null);
-    addKeyTime(850, 500.0, 600.0, 0.00, 1.0, null);
-    addKeyTime(1250, 250.0, 600.0, 0.00, 1.0, null);
-    addKeyTime(1650, 0.0, 600.0, 0.00, 1.0, null);
-
-    /** Removing this will remove the Spike the instant it touches x = 0 **/
-    addKeyTime(2050, -250.0, 600.0, 0.00, 1.0, null);
-
-    this.setEndState(REMOVE);
+    this(600.0, 50);
   }
 
   /**
@@ -44,25 +61,14 @@ public class SmallSquarePlatformSprite extends AbstractTerrainSprite
    */
   public SmallSquarePlatformSprite(double y)
   {
-    super(50, y);
-    SmallSquarePlatform ssp = new SmallSquarePlatform();
-
-    addKeyTime(50, 1000.0, y, 0.00, 1.0, ssp);
-    addKeyTime(450, 750.0, y, 0.00, 1.0, null);
-    addKeyTime(850, 500.0, y, 0.00, 1.0, null);
-    addKeyTime(1250, 250.0, y, 0.00, 1.0, null);
-    addKeyTime(1650, 0.0, y, 0.00, 1.0, null);
-
-    /** Removing this will remove the Spike the instant it touches x = 0 **/
-    addKeyTime(2050, -250.0, y, 0.00, 1.0, null);
-
-    this.setEndState(REMOVE);
+    this(y, 50);
   }
 
   /**
    * Explicit Constructor for a Spike Sprite that: 1. Moves a spike obstacle across the screen at a
    * constant rate. (Left <-- Right) 2. Sets spike's vertical position to the given y-value. 3. Sets
-   * spike's time to begin movement.
+   * spike's time to begin movement. The platform plays the shared platform track, so constructing
+   * one does not create any key frames, and its content draws from shared shapes.
    * 
    * @param y
    *          vertical position of the sprite.
@@ -71,47 +77,23 @@ public class SmallSquarePlatformSprite extends AbstractTerrainSprite
    */
   public SmallSquarePlatformSprite(double y, int startTime)
   {
-    super(startTime, y);
-    SmallSquarePlatform ssp = new SmallSquarePlatform();
-
-    addKeyTime(startTime, 1000.0, y, 0.00, 1.0, ssp);
-    addKeyTime(startTime + 400, 750.0, y, 0.00, 1.0, null);
-    addKeyTime(startTime + 800, 500.0, y, 0.00, 1.0, null);
-    addKeyTime(startTime + 1200, 250.0, y, 0.00, 1.0, null);
-    addKeyTime(startTime + 1600, 0.0, y, 0.00, 1.0, null);
-
-    /** Removing this will remove the Spike the instant it touches x = 0 **/
-    addKeyTime(startTime + 2000, -250.0, y, 0.00, 1.0, null);
+    super(startTime, y, TRACK, new SmallSquarePlatform());
 
     this.setEndState(REMOVE);
   }
 
-  /**
-   * Add a key time.
-   *
-   * @param time
-   *          The key time
-   * @param x
-   *          The x position
-   * @param y
-   *          The y position
-   * @param r
-   *          The rotation angle
-   * @param s
-   *          The scaling
-   * @param c
-   *          The Content
-   */
-  private void addKeyTime(int time, double x, double y, double r, double s, AggregateContent c)
-  {
-    addKeyTime(time, new Point2D.Double(x, y), new Double(r), new Double(s), c);
-  }
-
   @Override
   public AbstractTerrainSprite duplicate()
   {
     AbstractTerrainSprite clone = new SmallSquarePlatformSprite(getInitialY(), getStartTime());
+    clone.setRasterCache(getRasterCache());
     return clone;
   }
 
+  @Override
+  protected TransformableContent getRasterPrototype()
+  {
+    return RASTER_PROTOTYPE;
+  }
+
 }
@@ -0,0 +1,95 @@
+package arcade.bench;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Smoke test that runs each benchmark once on a small level, outside of JMH, so that a broken
+ * benchmark fails the build rather than the next benchmark run.
+ *
+ * @author John Latino
+ *
+ */
+public class LevelBenchmarkTest
+{
+  private static final int SIZE = 10;
+
+  private LevelBenchmark benchmark;
+  private LevelBenchmark.Size size;
+
+  @Before
+  public void setUp()
+  {
+    benchmark = new LevelBenchmark();
+    size = new LevelBenchmark.Size();
+    size.size = SIZE;
+  }
+
+  @Test
+  public void levelBuild()
+  {
+    assertEquals(SIZE, benchmark.levelBuild(size).size());
+  }
+
+  @Test
+  public void levelQueries()
+  {
+    LevelBenchmark.LevelState state = new LevelBenchmark.LevelState();
+    state.setUp(size);
+
+    int endTime = benchmark.levelEndTime(state);
+    assertEquals(endTime - 1, benchmark.levelEndTime(state));
+    assertEquals(SIZE, benchmark.initialSprites(state).size());
+    assertEquals(SIZE, benchmark.pooledInitialSprites(state).size());
+    assertNotNull(benchmark.terrainTick(state));
+
+    // the time wraps at the level end time
+    for (int i = 0; i < state.endTime; i++)
+    {
+      benchmark.terrainTick(state);
+    }
+    assertTrue(state.time < state.endTime);
+  }
+
+  @Test
+  public void stageRestart()
+  {
+    LevelBenchmark.StageState state = new LevelBenchmark.StageState();
+    state.setUp(size);
+    try
+    {
+      assertSame(state.stage, benchmark.stageRestart(state));
+    }
+    finally
+    {
+      state.tearDown();
+    }
+  }
+
+  @Test
+  public void collision()
+  {
+    LevelBenchmark.CollisionState state = new LevelBenchmark.CollisionState();
+    state.setUp(size);
+
+    assertSame(benchmark.collision(state), benchmark.collision(state));
+  }
+
+  @Test
+  public void simulationStep()
+  {
+    LevelBenchmark.SimulationState state = new LevelBenchmark.SimulationState();
+    state.setUp(size);
+
+    for (int i = 0; i < 100; i++)
+    {
+      benchmark.simulationStep(state);
+    }
+    assertTrue(state.simulation.getTime() > 0);
+  }
+}
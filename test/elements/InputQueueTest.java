@@ -0,0 +1,138 @@
+package arcade.elements;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests that an InputQueue hands out key presses in order, whether it is empty, full or wrapping
+ * around, and with a producer and a consumer on different threads.
+ *
+ * @author John Latino
+ *
+ */
+public class InputQueueTest
+{
+  @Test
+  public void keepsOrderWhenFullAndEmpty()
+  {
+    InputQueue queue = new InputQueue(3);
+    Recorder recorder = new Recorder();
+
+    // empty
+    assertEquals(0, queue.drain(recorder));
+
+    // full at the rounded up capacity; the key press that does not fit is dropped
+    for (int i = 0; i < 4; i++)
+    {
+      assertTrue(queue.offer(i, (char) ('a' + i), i));
+    }
+    assertFalse(queue.offer(4, 'e', 4));
+    assertEquals(1, queue.getDroppedCount());
+
+    assertEquals(4, queue.drain(recorder));
+    assertEquals(0, queue.drain(recorder));
+    assertArrayEquals(new int[] { 0, 1, 2, 3 }, recorder.codes());
+    assertEquals("abcd", recorder.chars.toString());
+
+    // wrap around the end of the ring many times, filling it each time
+    recorder.clear();
+    int next = 10;
+    int expected = 10;
+    for (int round = 0; round < 50; round++)
+    {
+      int count = 1 + round % 4;
+      for (int i = 0; i < count; i++)
+      {
+        assertTrue(queue.offer(next++, 'x', 0));
+      }
+      assertEquals(count, queue.drain(recorder));
+      for (int code : recorder.codes())
+      {
+        assertEquals(expected++, code);
+      }
+      recorder.clear();
+    }
+    assertEquals(1, queue.getDroppedCount());
+    assertEquals(4 + (next - 10), queue.getLatencyCount());
+  }
+
+  @Test
+  public void keepsOrderAcrossThreads() throws InterruptedException
+  {
+    final int total = 200000;
+    final InputQueue queue = new InputQueue(64);
+    Thread producer = new Thread(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        for (int i = 0; i < total; i++)
+        {
+          while (!queue.offer(i, ' ', System.nanoTime()))
+          {
+            Thread.yield();
+          }
+        }
+      }
+    });
+    producer.start();
+
+    final int[] received = new int[1];
+    InputQueue.Handler handler = new InputQueue.Handler()
+    {
+      @Override
+      public void handleKeyPress(int keyCode, char keyChar, long timestamp)
+      {
+        assertEquals(received[0]++, keyCode);
+      }
+    };
+    long deadline = System.currentTimeMillis() + 30000;
+    while (received[0] < total && System.currentTimeMillis() < deadline)
+    {
+      queue.drain(handler);
+    }
+    producer.join();
+
+    assertEquals(total, received[0]);
+    assertEquals(0, queue.drain(handler));
+  }
+
+  /**
+   * Handler that records the key presses it is given.
+   */
+  private static class Recorder implements InputQueue.Handler
+  {
+    private List<Integer> codes = new ArrayList<Integer>();
+    private StringBuilder chars = new StringBuilder();
+
+    @Override
+    public void handleKeyPress(int keyCode, char keyChar, long timestamp)
+    {
+      codes.add(keyCode);
+      chars.append(keyChar);
+    }
+
+    private int[] codes()
+    {
+      int[] result = new int[codes.size()];
+      for (int i = 0; i < result.length; i++)
+      {
+        result[i] = codes.get(i);
+      }
+      return result;
+    }
+
+    private void clear()
+    {
+      codes.clear();
+      chars.setLength(0);
+    }
+  }
+}
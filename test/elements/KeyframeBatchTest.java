@@ -0,0 +1,119 @@
+package arcade.elements;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import arcade.level.LevelStage;
+import sprite.SmallSquarePlatformSprite;
+
+/**
+ * Tests that a KeyframeBatch moves its sprites exactly as their own handleTick would, whether it
+ * updates them sequentially or in parallel.
+ *
+ * @author John Latino
+ *
+ */
+public class KeyframeBatchTest
+{
+  private static final int TIME_STEP = 20;
+
+  @Test
+  public void matchesOwnHandleTick()
+  {
+    int size = 500;
+    AbstractTerrainSprite[] batched = createSprites(size);
+    AbstractTerrainSprite[] own = createSprites(size);
+    KeyframeBatch batch = new KeyframeBatch();
+    for (AbstractTerrainSprite s : batched)
+    {
+      batch.add(s);
+    }
+
+    // forward in steps, then back to earlier times
+    int[] times = new int[300];
+    for (int i = 0; i < 250; i++)
+    {
+      times[i] = i * TIME_STEP;
+    }
+    Random random = new Random(3);
+    for (int i = 250; i < times.length; i++)
+    {
+      times[i] = random.nextInt(250 * TIME_STEP);
+    }
+
+    for (int time : times)
+    {
+      batch.evaluate(time);
+      batch.apply();
+      for (AbstractTerrainSprite s : own)
+      {
+        s.handleTick(time);
+      }
+      assertSamePositions(time, own, batched);
+    }
+  }
+
+  @Test
+  public void parallelMatchesSequential()
+  {
+    int size = 5000;
+    assertTrue(size > LevelStage.DEFAULT_PARALLEL_THRESHOLD);
+    AbstractTerrainSprite[] sequential = createSprites(size);
+    AbstractTerrainSprite[] parallel = createSprites(size);
+    KeyframeBatch sequentialBatch = new KeyframeBatch();
+    KeyframeBatch parallelBatch = new KeyframeBatch();
+    for (int i = 0; i < size; i++)
+    {
+      sequentialBatch.add(sequential[i]);
+      parallelBatch.add(parallel[i]);
+    }
+
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try
+    {
+      for (int time = 0; time < size * 7 + 1000; time += TIME_STEP * 5)
+      {
+        sequentialBatch.update(time, null, LevelStage.DEFAULT_PARALLEL_THRESHOLD);
+        parallelBatch.update(time, pool, LevelStage.DEFAULT_PARALLEL_THRESHOLD);
+        assertSamePositions(time, sequential, parallel);
+      }
+    }
+    finally
+    {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Creates platforms with staggered start times and heights.
+   */
+  private static AbstractTerrainSprite[] createSprites(int size)
+  {
+    Random random = new Random(size);
+    AbstractTerrainSprite[] sprites = new AbstractTerrainSprite[size];
+    for (int i = 0; i < size; i++)
+    {
+      sprites[i] = new SmallSquarePlatformSprite(100 + random.nextInt(500), i * 7);
+    }
+    return sprites;
+  }
+
+  private static void assertSamePositions(int time, AbstractTerrainSprite[] expected,
+      AbstractTerrainSprite[] actual)
+  {
+    for (int i = 0; i < expected.length; i++)
+    {
+      String where = "sprite " + i + " at " + time + " ms";
+      assertEquals(where, expected[i].isVisible(), actual[i].isVisible());
+      if (expected[i].isVisible())
+      {
+        assertEquals(where, expected[i].getBounds2D(), actual[i].getBounds2D());
+      }
+    }
+  }
+}
@@ -0,0 +1,58 @@
+package arcade.level;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import arcade.elements.AbstractTerrainSprite;
+import sprite.DemoProtagonist;
+import sprite.SmallSquarePlatformSprite;
+
+/**
+ * Tests that an EndlessTerrainSource only generates courses its protagonist can beat.
+ *
+ * @author John Latino
+ *
+ */
+public class EndlessTerrainSourceTest
+{
+  private static final int TIME_STEP = 20;
+  private static final int BOTTOM = 700;
+
+  @Test
+  public void longSeededCourseIsSolvable()
+  {
+    // gaps far shorter than a jump, and heights from above the protagonist to the ground
+    EndlessTerrainSource source = new EndlessTerrainSource(42, SmallSquarePlatformSprite.FACTORY,
+        createProtagonist(), TIME_STEP, 100, 1500, BOTTOM - 200, BOTTOM - 40);
+    assertTrue(source.getMinGap() >= EndlessTerrainSource.getJumpDuration(createProtagonist(),
+        TIME_STEP));
+
+    Level level = new Level();
+    for (int i = 0; i < 40; i++)
+    {
+      AbstractTerrainSprite s = source.next();
+      assertTrue(s.getInitialY() >= source.getMinY() && s.getInitialY() <= source.getMaxY());
+      level.add(s);
+    }
+
+    SolvabilityReport report = new SolvabilityChecker(level, createProtagonist(), TIME_STEP)
+        .check();
+    assertTrue(report.toString(), report.isSolvable());
+
+    LevelSimulation simulation = new LevelSimulation(level, createProtagonist(), TIME_STEP);
+    SimulationResult result = simulation.run(report.getJumpTicks());
+    assertNull(result.getCollision());
+    assertEquals(simulation.getEndTime(), result.getTime());
+  }
+
+  private static DemoProtagonist createProtagonist()
+  {
+    DemoProtagonist p = new DemoProtagonist(BOTTOM);
+    p.setXInitial(100);
+    p.setYInitial(BOTTOM - 80);
+    return p;
+  }
+}
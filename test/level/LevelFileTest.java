@@ -0,0 +1,145 @@
+package arcade.level;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import arcade.elements.AbstractTerrainSprite;
+import sprite.SmallSquarePlatformSprite;
+
+/**
+ * Tests writing levels to level files, mapping them back and rejecting corrupt files.
+ *
+ * @author John Latino
+ *
+ */
+public class LevelFileTest
+{
+  private static final int SIZE = 37;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private TerrainRegistry registry;
+  private Level level;
+  private File file;
+
+  @Before
+  public void setUp() throws IOException
+  {
+    registry = new TerrainRegistry();
+    registry.register(3, SmallSquarePlatformSprite.class, SmallSquarePlatformSprite.FACTORY);
+
+    level = new Level();
+    for (int i = SIZE - 1; i >= 0; i--)
+    {
+      level.add(new SmallSquarePlatformSprite(100 + (i * 37) % 500 + 0.25, i * 150));
+    }
+    level.addCheckpoint(4000);
+    level.addCheckpoint(1000);
+
+    file = folder.newFile("level.srlv");
+    LevelFile.write(level, registry, file);
+  }
+
+  @Test
+  public void mappedLevelPlaysLikeTheLevel() throws IOException
+  {
+    MappedLevel mapped = LevelFile.map(file, registry);
+    assertEquals(SIZE, mapped.size());
+    assertArrayEquals(new int[] { 1000, 4000 }, mapped.getCheckpoints());
+    assertEquals(level.getLevelEndTime(), mapped.getLevelEndTime(Level.DEFAULT_LEVEL_END_OFFSET));
+
+    List<AbstractTerrainSprite> expected = level.getSpawnIndex();
+    CheckpointableTerrainSource source = mapped.newSource();
+    assertEquals(SIZE, source.size());
+    for (int i = 0; i < SIZE; i++)
+    {
+      AbstractTerrainSprite original = expected.get(i);
+      assertEquals(3, mapped.getTypeId(i));
+      assertEquals(original.getStartTime(), source.peekStartTime());
+
+      AbstractTerrainSprite s = source.next();
+      assertTrue(s instanceof SmallSquarePlatformSprite);
+      assertEquals(original.getStartTime(), s.getStartTime());
+      assertEquals(original.getInitialY(), s.getInitialY(), 0.0);
+
+      // the copy is where the original would be, part way through its movement
+      AbstractTerrainSprite copy = original.duplicate();
+      int time = original.getStartTime() + 700;
+      copy.handleTick(time);
+      s.handleTick(time);
+      assertEquals(copy.getBounds2D(), s.getBounds2D());
+      source.release(s);
+    }
+    assertEquals(Integer.MAX_VALUE, source.peekStartTime());
+  }
+
+  @Test
+  public void corruptHeadersAreRejected() throws IOException
+  {
+    // magic, version, and a sprite count that runs past the end of the file
+    assertRejected(0, 0x12345678);
+    assertRejected(4, LevelFile.VERSION + 1);
+    assertRejected(8, SIZE * 1000);
+    assertRejected(12, -1);
+  }
+
+  @Test
+  public void truncatedFilesAreRejected() throws IOException
+  {
+    RandomAccessFile out = new RandomAccessFile(file, "rw");
+    try
+    {
+      out.setLength(LevelFile.HEADER_SIZE - 1);
+    }
+    finally
+    {
+      out.close();
+    }
+    assertMapFails();
+  }
+
+  /**
+   * Overwrites an int of a freshly written file and checks that the file cannot be mapped.
+   */
+  private void assertRejected(int offset, int value) throws IOException
+  {
+    LevelFile.write(level, registry, file);
+    RandomAccessFile out = new RandomAccessFile(file, "rw");
+    try
+    {
+      out.seek(offset);
+      out.writeInt(value);
+    }
+    finally
+    {
+      out.close();
+    }
+    assertMapFails();
+  }
+
+  private void assertMapFails()
+  {
+    try
+    {
+      LevelFile.map(file, registry);
+      fail("a corrupt level file was mapped");
+    }
+    catch (IOException e)
+    {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,133 @@
+package arcade.level;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import arcade.elements.AbstractTerrainSprite;
+import sprite.SmallSquarePlatformSprite;
+
+/**
+ * Tests importing CSV and JSON level exports, and the line numbers reported for malformed ones.
+ *
+ * @author John Latino
+ *
+ */
+public class LevelImporterTest
+{
+  private LevelImporter importer;
+
+  @Before
+  public void setUp()
+  {
+    TerrainRegistry registry = new TerrainRegistry();
+    registry.register(0, SmallSquarePlatformSprite.class, SmallSquarePlatformSprite.FACTORY);
+    importer = new LevelImporter(registry);
+    importer.register("platform", 0);
+  }
+
+  @Test
+  public void importsCsv() throws IOException
+  {
+    String csv = "type,startTime,y\n"
+        + "# designer notes\n"
+        + "platform,1000,600\n"
+        + "\n"
+        + "\"platform\", 2000 ,550.5\r\n"
+        + "checkpoint,1500\n";
+
+    assertLevel(importer.importLevel(new StringReader(csv), LevelImporter.Format.CSV));
+  }
+
+  @Test
+  public void importsJson() throws IOException
+  {
+    String json = "{\n"
+        + "  \"terrain\": [\n"
+        + "    { \"type\": \"platform\", \"startTime\": 1000, \"y\": 600 },\n"
+        + "    { \"type\": \"platform\", \"note\": [1, {\"a\": \"b\"}], \"startTime\": 2000,\n"
+        + "      \"initialY\": 550.5 }\n"
+        + "  ],\n"
+        + "  \"checkpoints\": [ 1500 ]\n"
+        + "}\n";
+
+    assertLevel(importer.importLevel(new StringReader(json), LevelImporter.Format.JSON));
+  }
+
+  @Test
+  public void importsJsonArrayOfRecords() throws IOException
+  {
+    String json = "[ {\"type\": \"platform\", \"startTime\": 1000, \"y\": 600},\n"
+        + "  {\"checkpoint\": 1500},\n"
+        + "  {\"type\": \"platform\", \"startTime\": 2000, \"y\": 550.5} ]";
+
+    assertLevel(importer.importLevel(new StringReader(json), LevelImporter.Format.JSON));
+  }
+
+  @Test
+  public void reportsCsvLineNumbers() throws IOException
+  {
+    assertError("platform,1000,600\nplatform,soon,600\n", LevelImporter.Format.CSV, 2,
+        "start time");
+    assertError("# header\n\nspike,1000,600\n", LevelImporter.Format.CSV, 3, "spike");
+    assertError("platform,1000\n", LevelImporter.Format.CSV, 1, "y position");
+    assertError("platform,1000,600\ncheckpoint,-5\n", LevelImporter.Format.CSV, 2, "negative");
+    assertError("platform,1000,600,7\n", LevelImporter.Format.CSV, 1, "too many fields");
+    assertError("\"platform,1000,600\n", LevelImporter.Format.CSV, 1, "unterminated");
+  }
+
+  @Test
+  public void reportsJsonLineNumbers() throws IOException
+  {
+    assertError("[\n  {\"type\": \"platform\", \"startTime\": 1000}\n]",
+        LevelImporter.Format.JSON, 2, "missing y");
+    assertError("[\n{\"type\": \"platform\", \"startTime\": 1000, \"y\": 600},\n{}\n]",
+        LevelImporter.Format.JSON, 3, "empty record");
+    assertError("[\n\n  {\"type\": \"platform\", \"startTime\": 1.5, \"y\": 600}\n]",
+        LevelImporter.Format.JSON, 3, "startTime");
+    assertError("{\"terrain\": [\n  {\"type\": \"platform\"\n  \"startTime\": 1000}]}",
+        LevelImporter.Format.JSON, 3, "expected");
+    assertError("[\n  {\"type\": \"platf", LevelImporter.Format.JSON, 2, "unterminated");
+  }
+
+  /**
+   * Checks the level described by every valid export in this test.
+   */
+  private static void assertLevel(Level level)
+  {
+    List<AbstractTerrainSprite> terrain = level.getSpawnIndex();
+    assertEquals(2, terrain.size());
+    assertTrue(terrain.get(0) instanceof SmallSquarePlatformSprite);
+    assertEquals(1000, terrain.get(0).getStartTime());
+    assertEquals(600.0, terrain.get(0).getInitialY(), 0.0);
+    assertEquals(2000, terrain.get(1).getStartTime());
+    assertEquals(550.5, terrain.get(1).getInitialY(), 0.0);
+    assertArrayEquals(new int[] { 1500 }, level.getCheckpoints());
+  }
+
+  /**
+   * Imports a malformed export and checks the reported line and message.
+   */
+  private void assertError(String export, LevelImporter.Format format, int line, String message)
+      throws IOException
+  {
+    try
+    {
+      importer.importLevel(new StringReader(export), format);
+      fail("expected a LevelFormatException for " + export);
+    }
+    catch (LevelFormatException e)
+    {
+      assertEquals(e.getMessage(), line, e.getLineNumber());
+      assertTrue(e.getMessage(), e.getMessage().contains(message));
+    }
+  }
+}
@@ -0,0 +1,123 @@
+package arcade.level;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import arcade.elements.AbstractTerrainSprite;
+import sprite.DemoProtagonist;
+import sprite.SmallSquarePlatformSprite;
+import visual.dynamic.described.Sprite;
+
+/**
+ * Tests that a LevelSimulation plays a level exactly as a LevelStage does.
+ *
+ * @author John Latino
+ *
+ */
+public class LevelSimulationTest
+{
+  private static final int TIME_STEP = 20;
+  private static final int BOTTOM = 700;
+  private static final int[] JUMPS = { 5, 40, 41, 90, 150, 151, 152, 230, 300, 360 };
+
+  @Test
+  public void simulationMatchesStage()
+  {
+    Level level = createLevel();
+
+    TracingProtagonist onStage = createProtagonist();
+    LevelStage stage = new LevelStage(level, onStage, 1000, BOTTOM, TIME_STEP);
+    onStage.goToInitial();
+    onStage.setJumpSchedule(JUMPS);
+    int ticks = level.getLevelEndTime() / TIME_STEP;
+    for (int tick = 1; tick <= ticks; tick++)
+    {
+      stage.getStage().handleTick(tick * TIME_STEP);
+    }
+
+    TracingProtagonist headless = createProtagonist();
+    LevelSimulation simulation = new LevelSimulation(level, headless, TIME_STEP);
+    simulation.reset();
+    for (int tick = 1; tick <= ticks; tick++)
+    {
+      simulation.step(Arrays.binarySearch(JUMPS, tick) >= 0);
+    }
+
+    assertEquals(ticks, onStage.trace.size());
+    assertTrue("the level should make the protagonist collide", onStage.collisions > 0);
+    assertEquals(onStage.trace, headless.trace);
+  }
+
+  @Test
+  public void runReportsTheStagesFirstCollision()
+  {
+    Level level = createLevel();
+
+    TracingProtagonist onStage = createProtagonist();
+    LevelStage stage = new LevelStage(level, onStage, 1000, BOTTOM, TIME_STEP);
+    onStage.goToInitial();
+    int tick = 0;
+    while (onStage.collisions == 0)
+    {
+      stage.getStage().handleTick(++tick * TIME_STEP);
+    }
+
+    SimulationResult result = new LevelSimulation(level, createProtagonist(), TIME_STEP)
+        .run(new int[0]);
+    assertEquals(tick, result.getTicks());
+  }
+
+  private static Level createLevel()
+  {
+    Random random = new Random(7);
+    Level level = new Level();
+    for (int i = 0; i < 60; i++)
+    {
+      level.add(new SmallSquarePlatformSprite(400 + random.nextInt(300), 200 + i * 150));
+    }
+    return level;
+  }
+
+  private static TracingProtagonist createProtagonist()
+  {
+    TracingProtagonist protagonist = new TracingProtagonist(BOTTOM);
+    protagonist.setXInitial(100);
+    protagonist.setYInitial(BOTTOM - 80);
+    return protagonist;
+  }
+
+  /**
+   * Protagonist that records its position, and the start time of the terrain it collides with,
+   * after every step.
+   */
+  private static class TracingProtagonist extends DemoProtagonist
+  {
+    private List<String> trace = new ArrayList<String>();
+    private int collisions;
+
+    private TracingProtagonist(int bottom)
+    {
+      super(bottom);
+    }
+
+    @Override
+    public void step(int time)
+    {
+      super.step(time);
+      Sprite hit = getCollision();
+      if (hit != null)
+      {
+        collisions++;
+      }
+      trace.add(time + ": " + x + ", " + y + ", " + angle + " hit "
+          + ((hit == null) ? "-" : ((AbstractTerrainSprite) hit).getStartTime()));
+    }
+  }
+}
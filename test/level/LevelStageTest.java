@@ -0,0 +1,272 @@
+package arcade.level;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import arcade.elements.AbstractTerrainSprite;
+import sprite.DemoProtagonist;
+import sprite.SmallSquarePlatformSprite;
+import visual.dynamic.described.Sprite;
+
+/**
+ * Tests recording and replaying jumps across LevelStage restarts. Ticks are driven by the test
+ * rather than by the stage's metronome.
+ *
+ * @author John Latino
+ *
+ */
+public class LevelStageTest
+{
+  private static final int TIME_STEP = 20;
+  private static final int BOTTOM = 700;
+  private static final int CHECKPOINT = 3000;
+  private static final int PHYSICS_STEP = 4;
+
+  private Level level;
+  private DemoProtagonist protagonist;
+  private LevelStage stage;
+
+  @Before
+  public void setUp()
+  {
+    level = new Level();
+    for (int i = 0; i < 10; i++)
+    {
+      level.add(new SmallSquarePlatformSprite(100, 1000 + i * 1000));
+    }
+    level.addCheckpoint(CHECKPOINT);
+
+    protagonist = createProtagonist();
+    stage = new LevelStage(level, protagonist, 1000, BOTTOM, TIME_STEP);
+  }
+
+  @Test
+  public void recordingSurvivesRestarts()
+  {
+    InputLog log = stage.startRecording();
+    stage.getStage().stop();
+
+    advanceTo(3);
+    assertTrue(protagonist.requestJump());
+    advanceTo(160);
+    assertTrue(protagonist.requestJump());
+    advanceTo(170);
+    assertArrayEquals(new int[] { 4, 161 }, log.getTicks());
+
+    // the jump after the checkpoint is dropped, and jumps keep counting from the level start
+    stage.restartFromCheckpoint();
+    stage.getStage().stop();
+    assertEquals(CHECKPOINT / TIME_STEP, protagonist.getStepCount());
+    assertArrayEquals(new int[] { 4 }, log.getTicks());
+    advanceTo(165);
+    assertTrue(protagonist.requestJump());
+    advanceTo(200);
+    assertArrayEquals(new int[] { 4, 166 }, log.getTicks());
+
+    // a full restart starts the recording over
+    stage.restart();
+    stage.getStage().stop();
+    advanceTo(5);
+    assertTrue(protagonist.requestJump());
+    advanceTo(10);
+    assertArrayEquals(new int[] { 6 }, log.getTicks());
+    assertEquals(log, stage.stopRecording());
+  }
+
+  @Test
+  public void recordedRunReplaysHeadless()
+  {
+    InputLog log = stage.startRecording();
+    stage.getStage().stop();
+
+    advanceTo(3);
+    protagonist.requestJump();
+    advanceTo(160);
+    protagonist.requestJump();
+    advanceTo(170);
+    stage.restartFromCheckpoint();
+    stage.getStage().stop();
+    advanceTo(165);
+    protagonist.requestJump();
+    advanceTo(250);
+    double[] recorded = protagonist.saveState();
+    stage.stopRecording();
+
+    LevelSimulation simulation = new LevelSimulation(level, createProtagonist(), TIME_STEP);
+    int[] ticks = log.getTicks();
+    simulation.reset();
+    for (int tick = 1; tick <= 250; tick++)
+    {
+      simulation.step(Arrays.binarySearch(ticks, tick) >= 0);
+    }
+    assertArrayEquals(recorded, simulation.getProtagonist().saveState(), 0.0);
+  }
+
+  @Test
+  public void replayResumesFromCheckpoint()
+  {
+    InputLog log = new InputLog();
+    log.add(4);
+    log.add(161);
+
+    stage.replay(log);
+    stage.getStage().stop();
+    advanceTo(200);
+    double[] played = protagonist.saveState();
+
+    // back to tick 150, from where the jump at 161 must be played again
+    stage.restartFromCheckpoint();
+    stage.getStage().stop();
+    advanceTo(200);
+    assertArrayEquals(played, protagonist.saveState(), 0.0);
+  }
+
+  @Test
+  public void compiledLevelRestartsFromCheckpoint()
+  {
+    // platforms close enough together that the compiled source reuses released sprites
+    Level dense = new Level();
+    for (int i = 0; i < 60; i++)
+    {
+      dense.add(new SmallSquarePlatformSprite(BOTTOM - 100 - (i % 3) * 60, i * 100));
+    }
+    dense.addCheckpoint(CHECKPOINT);
+
+    TracingProtagonist traced = new TracingProtagonist();
+    LevelStage compiled = new LevelStage(dense.freeze().newSource(), traced, 1000, BOTTOM,
+        TIME_STEP);
+    int steps = 250;
+    while (traced.getStepCount() < steps)
+    {
+      compiled.advance();
+    }
+    List<String> played = new ArrayList<String>(traced.trace);
+
+    compiled.restartFromCheckpoint();
+    compiled.getStage().stop();
+    int checkpoint = CHECKPOINT / TIME_STEP;
+    assertEquals(checkpoint, traced.getStepCount());
+    while (traced.getStepCount() < steps)
+    {
+      compiled.advance();
+    }
+
+    assertTrue("the level should make the protagonist collide", traced.collisions > 0);
+    assertEquals(played.subList(checkpoint, steps),
+        traced.trace.subList(steps, traced.trace.size()));
+  }
+
+  @Test
+  public void metricsCountTheTerrainOfEachSource()
+  {
+    assertEquals(level.size(), stage.getMetrics().getTotalTerrainCount());
+
+    LevelStage compiled = new LevelStage(level.freeze().newSource(), createProtagonist(), 1000,
+        BOTTOM, TIME_STEP);
+    assertEquals(level.size(), compiled.getMetrics().getTotalTerrainCount());
+
+    // generated terrain has no end
+    LevelStage endless = new LevelStage(new EndlessTerrainSource(1,
+        SmallSquarePlatformSprite.FACTORY, createProtagonist(), TIME_STEP, 100, 1500, BOTTOM - 200,
+        BOTTOM - 40), createProtagonist(), 1000, BOTTOM, TIME_STEP);
+    assertEquals(-1, endless.getMetrics().getTotalTerrainCount());
+  }
+
+  @Test
+  public void fixedTimestepRecordingMatchesSimulation()
+  {
+    Level ground = new Level();
+    for (int i = 0; i < 20; i++)
+    {
+      ground.add(new SmallSquarePlatformSprite(BOTTOM - 100, i * 40));
+    }
+
+    TracingProtagonist onStage = new TracingProtagonist();
+    LevelStage fixed = new LevelStage(ground, onStage, 1000, BOTTOM, TIME_STEP);
+    fixed.setFixedTimestep(PHYSICS_STEP);
+    InputLog log = fixed.startRecording();
+    fixed.getStage().stop();
+
+    // ticks follow the wall clock, so each one plays a varying number of physics steps
+    int steps = 700;
+    int[] jumps = { 100, 400 };
+    int next = 0;
+    while (onStage.getStepCount() < steps)
+    {
+      if (next < jumps.length && onStage.getStepCount() >= jumps[next])
+      {
+        onStage.requestJump();
+        next++;
+      }
+      fixed.advance();
+    }
+    fixed.stopRecording();
+
+    TracingProtagonist headless = new TracingProtagonist();
+    LevelSimulation simulation = new LevelSimulation(ground, headless, PHYSICS_STEP);
+    int[] ticks = log.getTicks();
+    simulation.reset();
+    for (int tick = 1; tick <= steps; tick++)
+    {
+      simulation.step(Arrays.binarySearch(ticks, tick) >= 0);
+    }
+
+    assertEquals(2, ticks.length);
+    assertTrue("the level should make the protagonist collide", headless.collisions > 0);
+    assertEquals(headless.trace, onStage.trace.subList(0, steps));
+  }
+
+  private void advanceTo(int tick)
+  {
+    while (protagonist.getStepCount() < tick)
+    {
+      stage.advance();
+    }
+  }
+
+  private static DemoProtagonist createProtagonist()
+  {
+    DemoProtagonist p = new DemoProtagonist(BOTTOM);
+    p.setXInitial(100);
+    p.setYInitial(BOTTOM - 80);
+    return p;
+  }
+
+  /**
+   * Protagonist that records its position, and the start time of the terrain it collides with,
+   * after every step.
+   */
+  private static class TracingProtagonist extends DemoProtagonist
+  {
+    private List<String> trace = new ArrayList<String>();
+    private int collisions;
+
+    private TracingProtagonist()
+    {
+      super(BOTTOM);
+      setXInitial(100);
+      setYInitial(BOTTOM - 80);
+    }
+
+    @Override
+    public void step(int time)
+    {
+      super.step(time);
+      Sprite hit = getCollision();
+      if (hit != null)
+      {
+        collisions++;
+      }
+      trace.add(time + ": " + y + " hit "
+          + ((hit == null) ? "-" : ((AbstractTerrainSprite) hit).getStartTime()));
+    }
+  }
+}
@@ -0,0 +1,85 @@
+package arcade.level;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.security.InvalidParameterException;
+import java.util.Random;
+
+import org.junit.Test;
+
+import sprite.DemoProtagonist;
+import sprite.SmallSquarePlatformSprite;
+
+/**
+ * Tests that the SolvabilityChecker agrees with LevelSimulation about which runs collide.
+ *
+ * @author John Latino
+ *
+ */
+public class SolvabilityCheckerTest
+{
+  private static final int TIME_STEP = 20;
+  private static final int BOTTOM = 700;
+
+  @Test
+  public void solutionBeatsTheSimulation()
+  {
+    Level level = createLevel(3000);
+
+    SolvabilityReport report = new SolvabilityChecker(level, createProtagonist(), TIME_STEP)
+        .check();
+    assertTrue(report.toString(), report.isSolvable());
+
+    LevelSimulation simulation = new LevelSimulation(level, createProtagonist(), TIME_STEP);
+    SimulationResult result = simulation.run(report.getJumpTicks());
+    assertNull(result.getCollision());
+    assertEquals(simulation.getEndTime(), result.getTime());
+  }
+
+  @Test(expected = InvalidParameterException.class)
+  public void nullLevelIsRejected()
+  {
+    new SolvabilityChecker(null, createProtagonist(), TIME_STEP);
+  }
+
+  @Test
+  public void failureMatchesTheSimulation()
+  {
+    // a wall of platforms from the ground to above the highest jump
+    Level level = new Level();
+    for (int y = BOTTOM - 80; y > 100; y -= 40)
+    {
+      level.add(new SmallSquarePlatformSprite(y, 1000));
+    }
+
+    SolvabilityReport report = new SolvabilityChecker(level, createProtagonist(), TIME_STEP)
+        .check();
+    assertFalse(report.isSolvable());
+
+    SimulationResult result = new LevelSimulation(level, createProtagonist(), TIME_STEP)
+        .run(new int[0]);
+    assertEquals(result.getTicks(), report.getFailureTick());
+  }
+
+  private static Level createLevel(int spacing)
+  {
+    Random random = new Random(3);
+    Level level = new Level();
+    for (int i = 0; i < 20; i++)
+    {
+      level.add(new SmallSquarePlatformSprite(600 + random.nextInt(60), 500 + i * spacing));
+    }
+    return level;
+  }
+
+  private static DemoProtagonist createProtagonist()
+  {
+    DemoProtagonist protagonist = new DemoProtagonist(BOTTOM);
+    protagonist.setXInitial(100);
+    protagonist.setYInitial(BOTTOM - 80);
+    return protagonist;
+  }
+}
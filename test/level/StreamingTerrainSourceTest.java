@@ -0,0 +1,61 @@
+package arcade.level;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import sprite.SmallSquarePlatformSprite;
+
+/**
+ * Tests that a StreamingTerrainSource keeps its count of resident segments across rewinds.
+ *
+ * @author John Latino
+ *
+ */
+public class StreamingTerrainSourceTest
+{
+  private static final int SEGMENTS = 6;
+  private static final int SPRITES_PER_SEGMENT = 3;
+
+  @Test
+  public void rewindMidCourseEvictsSegmentsWithSpritesOut()
+  {
+    StreamingTerrainSource source = new StreamingTerrainSource(new MemorySegments(), 1);
+    int initial = source.getResidentSegmentCount();
+
+    for (int rewinds = 0; rewinds < 5; rewinds++)
+    {
+      // play into the fourth segment without releasing anything, so that the first three
+      // segments are exhausted with sprites still out
+      for (int i = 0; i < 3 * SPRITES_PER_SEGMENT + 1; i++)
+      {
+        source.next();
+      }
+      source.rewind();
+      assertEquals(initial, source.getResidentSegmentCount());
+    }
+  }
+
+  /**
+   * Segments held in memory, each a Level of a few platforms.
+   */
+  private static class MemorySegments implements LevelSegments
+  {
+    @Override
+    public int getSegmentCount()
+    {
+      return SEGMENTS;
+    }
+
+    @Override
+    public TerrainSource loadSegment(int index)
+    {
+      Level segment = new Level();
+      for (int i = 0; i < SPRITES_PER_SEGMENT; i++)
+      {
+        segment.add(new SmallSquarePlatformSprite(100, (index * SPRITES_PER_SEGMENT + i) * 500));
+      }
+      return segment.newSource();
+    }
+  }
+}